@@ -0,0 +1,69 @@
+package mcpimod.core;
+
+import mcpimod.utils.BlockIdStream;
+
+/**
+ * The block commands which only need {@link WorldAccess}. Queries are
+ * answered from snapshots on the worker threads of the {@link ResponseQueue}.
+ */
+public class BlockCommands {
+
+  /** Executes the command if it is one of the block commands, returns false otherwise */
+  public static boolean handle(String c, String[] args, WorldAccess world, ResponseQueue responses) {
+    if (c.equals("world.setBlock")) {
+      int blockData = args.length >= 5 ? Integer.parseInt(args[4]) : 0;
+      world.setBlock(parseCoordinate(args[0]), parseCoordinate(args[1]), parseCoordinate(args[2]),
+          Integer.parseInt(args[3]), blockData);
+    }
+
+    else if (c.equals("world.getBlock")) {
+      int x = parseCoordinate(args[0]);
+      int y = parseCoordinate(args[1]);
+      int z = parseCoordinate(args[2]);
+      BlockSnapshot snapshot = world.snapshot(x, y, z, x, y, z);
+
+      responses.sendAsync(out -> out.append(snapshot.getBlockId(x, y, z)));
+    }
+
+    else if (c.equals("world.getBlocks")) {
+      int x1 = parseCoordinate(args[0]);
+      int y1 = parseCoordinate(args[1]);
+      int z1 = parseCoordinate(args[2]);
+      int x2 = parseCoordinate(args[3]);
+      int y2 = parseCoordinate(args[4]);
+      int z2 = parseCoordinate(args[5]);
+      BlockSnapshot snapshot = world.streamSnapshot(x1, y1, z1, x2, y2, z2);
+
+      // produced while it is written, large regions would not fit into memory as one line
+      responses.sendStream(new BlockIdStream(snapshot, x1, y1, z1, x2, y2, z2));
+    }
+
+    else if (c.equals("world.getHeight")) {
+      int x = Integer.parseInt(args[0]);
+      int z = Integer.parseInt(args[1]);
+      BlockSnapshot snapshot = world.snapshot(x, 0, z, x, 255, z);
+
+      responses.sendAsync(out -> {
+        int highestY = 0;
+        for (int y = 0; y <= 255; y++) {
+          // every kind of air maps to id 0
+          if (snapshot.getBlockId(x, y, z) != 0) {
+            highestY = y;
+          }
+        }
+        out.append(highestY);
+      });
+    }
+
+    else {
+      return false;
+    }
+    return true;
+  }
+
+  /** Block coordinates may be sent as decimals, which are cut off */
+  public static int parseCoordinate(String arg) {
+    return (int) Double.parseDouble(arg);
+  }
+
+}
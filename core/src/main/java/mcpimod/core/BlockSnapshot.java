@@ -0,0 +1,13 @@
+package mcpimod.core;
+
+/** Blocks copied from a world, which can be read from any thread */
+public interface BlockSnapshot {
+
+  /** Returns the api id of the block, 0 above and below the world */
+  int getBlockId(int x, int y, int z);
+
+  /** Drops the sections of one x slice ({@code x >> 4}) once they were read */
+  default void release(int sectionX) {
+  }
+
+}
@@ -0,0 +1,70 @@
+package mcpimod.core;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import mcpimod.utils.CommandLine;
+
+/**
+ * The lines a session received, waiting to be executed on the server thread,
+ * and the share of the per tick command limit the session used so far.
+ */
+public class CommandQueue {
+
+  /** A received line with the time (System.nanoTime) it arrived */
+  public static class QueuedLine {
+    public final String line;
+    public final long receivedAt;
+
+    /**
+     * The parsed command, set by the server thread the first time it looks
+     * at the line, so a command waiting for its chunks is parsed only once
+     */
+    public CommandLine command = null;
+
+    private QueuedLine(String line, long receivedAt) {
+      this.line = line;
+      this.receivedAt = receivedAt;
+    }
+  }
+
+  private final ConcurrentLinkedQueue<QueuedLine> lines = new ConcurrentLinkedQueue<>();
+
+  /** Commands executed in the current tick, only used on the server thread */
+  private int processed = 0;
+
+  /** Called by the reader thread of the session */
+  public void add(String line, long receivedAt) {
+    lines.add(new QueuedLine(line, receivedAt));
+  }
+
+  public QueuedLine peek() {
+    return lines.peek();
+  }
+
+  public QueuedLine poll() {
+    return lines.poll();
+  }
+
+  public boolean isEmpty() {
+    return lines.isEmpty();
+  }
+
+  public int size() {
+    return lines.size();
+  }
+
+  /** Called at the start of every tick */
+  public void startTick() {
+    processed = 0;
+  }
+
+  public boolean hasBudget(int maxPerTick) {
+    return processed < maxPerTick;
+  }
+
+  /** Counts an executed command, returns true if it used up the limit of the tick */
+  public boolean countCommand(int maxPerTick) {
+    return ++processed == maxPerTick;
+  }
+
+}
@@ -0,0 +1,86 @@
+package mcpimod.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A world kept in memory as 16x16x16 sections of api ids, to run the
+ * protocol without Minecraft in tests and benchmarks. Block data values
+ * are ignored.
+ */
+public class FakeWorld implements WorldAccess {
+
+  private static final int SECTION_BYTES = 16 * 16 * 16;
+
+  private final int bottomY, topY;
+  private final Map<Long, byte[]> sections = new HashMap<>();
+
+  /** The height range of the overworld */
+  public FakeWorld() {
+    this(-64, 320);
+  }
+
+  public FakeWorld(int bottomY, int topY) {
+    this.bottomY = bottomY;
+    this.topY = topY;
+  }
+
+  public int getBlockId(int x, int y, int z) {
+    if (y < bottomY || y >= topY) {
+      return 0;
+    }
+    byte[] section = sections.get(sectionKey(x >> 4, y >> 4, z >> 4));
+    return section == null ? 0 : section[index(x, y, z)] & 0xFF;
+  }
+
+  @Override
+  public void setBlock(int x, int y, int z, int blockId, int blockData) {
+    if (y < bottomY || y >= topY) {
+      return;
+    }
+    byte[] section = sections.computeIfAbsent(sectionKey(x >> 4, y >> 4, z >> 4), k -> new byte[SECTION_BYTES]);
+    section[index(x, y, z)] = (byte) blockId;
+  }
+
+  @Override
+  public BlockSnapshot snapshot(int x1, int y1, int z1, int x2, int y2, int z2) {
+    Map<Long, byte[]> copies = new HashMap<>();
+    for (int sx = Math.min(x1, x2) >> 4; sx <= Math.max(x1, x2) >> 4; sx++) {
+      for (int sy = Math.min(y1, y2) >> 4; sy <= Math.max(y1, y2) >> 4; sy++) {
+        for (int sz = Math.min(z1, z2) >> 4; sz <= Math.max(z1, z2) >> 4; sz++) {
+          byte[] section = sections.get(sectionKey(sx, sy, sz));
+          if (section != null) {
+            copies.put(sectionKey(sx, sy, sz), Arrays.copyOf(section, SECTION_BYTES));
+          }
+        }
+      }
+    }
+
+    return new BlockSnapshot() {
+      @Override
+      public int getBlockId(int x, int y, int z) {
+        if (y < bottomY || y >= topY) {
+          return 0;
+        }
+        byte[] section = copies.get(sectionKey(x >> 4, y >> 4, z >> 4));
+        return section == null ? 0 : section[index(x, y, z)] & 0xFF;
+      }
+
+      @Override
+      public void release(int sectionX) {
+        copies.keySet().removeIf(key -> key >> 42 == sectionX);
+      }
+    };
+  }
+
+  /** Packed like ChunkSectionPos.asLong: 22 bits x, 22 bits z, 20 bits y */
+  private static long sectionKey(int sx, int sy, int sz) {
+    return ((long) sx & 0x3FFFFF) << 42 | ((long) sz & 0x3FFFFF) << 20 | (sy & 0xFFFFF);
+  }
+
+  private static int index(int x, int y, int z) {
+    return ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+  }
+
+}
@@ -0,0 +1,140 @@
+package mcpimod.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits how fast a session executes commands, writes blocks and sends data,
+ * with a {@link TokenBucket} per limit. Every session has its own buckets
+ * and shares a second set with the other sessions from the same address,
+ * so opening more connections doesn't get around the limits.
+ *
+ * Commands over the limit wait in the queue of the session (or are rejected,
+ * see {@link #REJECT}). Blocks can't be rejected once a command wrote them, so the
+ * session waits until they are paid back. Reading waits as well, which lets
+ * TCP slow down the client.
+ */
+public class RateLimiter {
+
+  /**
+   * The limits of each session, 0 turns a limit off. Synced with the
+   * gamerules, sessions keep the limits they were opened with.
+   */
+  public static int COMMANDS_PER_SECOND = 0;
+  public static int BLOCKS_PER_SECOND = 0;
+  public static int BYTES_PER_SECOND = 0;
+
+  /**
+   * The sessions of one address share limits this many times as high, 0
+   * turns the shared limits off
+   */
+  public static int ADDRESS_FACTOR = 4;
+
+  /**
+   * Reject commands over the limit instead of delaying them. Commands with an
+   * answer are answered with "Fail", the others are dropped.
+   */
+  public static boolean REJECT = false;
+
+  /** Commands rejected over the limit */
+  public static final LongAdder REJECTED = new LongAdder();
+  /** Ticks in which a session waited for its limits */
+  public static final LongAdder DELAYED_TICKS = new LongAdder();
+
+  // the shared limiters of the addresses with open sessions
+  private static final Map<String, RateLimiter> BY_ADDRESS = new HashMap<>();
+
+  private final String address;
+  private final TokenBucket commands, blocks, bytes;
+  /** The limiter shared by the sessions of the address, or null */
+  private final RateLimiter shared;
+
+  // for shared limiters, guarded by BY_ADDRESS
+  private int sessions = 0;
+  private boolean released = false;
+
+  private RateLimiter(String address, int factor, RateLimiter shared) {
+    this.address = address;
+    this.commands = bucket(COMMANDS_PER_SECOND, factor);
+    this.blocks = bucket(BLOCKS_PER_SECOND, factor);
+    this.bytes = bucket(BYTES_PER_SECOND, factor);
+    this.shared = shared;
+  }
+
+  private static TokenBucket bucket(int perSecond, int factor) {
+    return perSecond > 0 ? new TokenBucket((double) perSecond * factor) : null;
+  }
+
+  /** Creates the limiter of a newly accepted connection */
+  public static RateLimiter admit(String address) {
+    RateLimiter shared = null;
+    if (ADDRESS_FACTOR > 0) {
+      synchronized (BY_ADDRESS) {
+        shared = BY_ADDRESS.computeIfAbsent(address, a -> new RateLimiter(a, ADDRESS_FACTOR, null));
+        shared.sessions++;
+      }
+    }
+    return new RateLimiter(address, 1, shared);
+  }
+
+  /** Called once the session is closed */
+  public void release() {
+    if (shared == null) {
+      return;
+    }
+    synchronized (BY_ADDRESS) {
+      if (released) {
+        return;
+      }
+      released = true;
+      if (--shared.sessions == 0) {
+        BY_ADDRESS.remove(address, shared);
+      }
+    }
+  }
+
+  public boolean mayExecuteCommand() {
+    return available(commands) && (shared == null || shared.mayExecuteCommand());
+  }
+
+  /** False while the blocks written so far are over the limit */
+  public boolean mayWriteBlocks() {
+    return available(blocks) && (shared == null || shared.mayWriteBlocks());
+  }
+
+  public void commandExecuted() {
+    take(commands, 1);
+    if (shared != null) {
+      shared.commandExecuted();
+    }
+  }
+
+  public void blocksWritten(int count) {
+    take(blocks, count);
+    if (shared != null) {
+      shared.blocksWritten(count);
+    }
+  }
+
+  /**
+   * Returns how long the reader has to wait before it reads on, see
+   * {@link ThrottledInputStream}
+   */
+  public long bytesRead(int count) {
+    take(bytes, count);
+    long wait = bytes == null ? 0 : bytes.nanosUntilAvailable();
+    return shared == null ? wait : Math.max(wait, shared.bytesRead(count));
+  }
+
+  private static boolean available(TokenBucket bucket) {
+    return bucket == null || bucket.isAvailable();
+  }
+
+  private static void take(TokenBucket bucket, int count) {
+    if (bucket != null) {
+      bucket.take(count);
+    }
+  }
+
+}
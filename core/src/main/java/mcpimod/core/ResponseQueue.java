@@ -0,0 +1,195 @@
+package mcpimod.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import mcpimod.utils.ResponseStream;
+import mcpimod.utils.ResponseWriter;
+
+/**
+ * The responses of one session, kept in the order of their commands. Lines
+ * are queued right away, answered on a worker thread ({@link #sendAsync}) or
+ * produced while they are written ({@link #sendStream}). The writer thread
+ * of the session blocks in {@link #await} until there is something to send
+ * and sends it with {@link #writeTo}.
+ */
+public class ResponseQueue {
+
+  /** Wakes up the writer thread once the queue is closed */
+  private static final Object CLOSED = new Object();
+
+  /** Finished lines (byte[]) and responses still to be produced (StreamedResponse) */
+  private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+
+  /** The response taken from the queue by await, only used by the writer thread */
+  private Object next = null;
+
+  /**
+   * Completes once every response queued before it has been sent, used to
+   * keep the responses in order while queries are answered asynchronously.
+   */
+  private CompletableFuture<Void> pending = CompletableFuture.completedFuture(null);
+
+  /** Responses sent but not written yet, including the ones still produced */
+  private final AtomicInteger size = new AtomicInteger();
+
+  private final Executor executor;
+  private final Consumer<Throwable> errorHandler;
+
+  /** Holds the current chunk of a streamed response, only used by the writer thread */
+  private final ResponseWriter chunk = new ResponseWriter();
+
+  private volatile boolean closed = false;
+
+  private static class StreamedResponse {
+    private final ResponseStream stream;
+    private final CompletableFuture<Void> written = new CompletableFuture<>();
+
+    private StreamedResponse(ResponseStream stream) {
+      this.stream = stream;
+    }
+  }
+
+  /** Queries run on the executor, failed queries and streams are passed to the error handler */
+  public ResponseQueue(Executor executor, Consumer<Throwable> errorHandler) {
+    this.executor = executor;
+    this.errorHandler = errorHandler;
+  }
+
+  /** Queues a finished line, terminated with a newline */
+  public void send(byte[] line) {
+    if (closed)
+      return;
+    size.incrementAndGet();
+    if (pending.isDone()) {
+      queue.add(line);
+    } else {
+      pending = pending.thenRun(() -> queue.add(line));
+    }
+  }
+
+  /**
+   * Answers a read only query on a worker thread. The query must only read
+   * from snapshots taken beforehand, never from the live world.
+   */
+  public void sendAsync(Consumer<ResponseWriter> query) {
+    if (closed)
+      return;
+    size.incrementAndGet();
+    CompletableFuture<byte[]> result = CompletableFuture.supplyAsync(() -> {
+      ResponseWriter out = new ResponseWriter();
+      query.accept(out);
+      return out.toLine();
+    }, executor);
+    pending = pending.thenCompose(v -> result).handle((line, e) -> {
+      if (e != null) {
+        size.decrementAndGet();
+        errorHandler.accept(e);
+      } else {
+        queue.add(line);
+      }
+      return null;
+    });
+  }
+
+  /**
+   * Sends a response which is produced by the writer thread while it is
+   * written, so the session only holds one chunk of it at a time
+   */
+  public void sendStream(ResponseStream stream) {
+    if (closed)
+      return;
+    size.incrementAndGet();
+    StreamedResponse response = new StreamedResponse(stream);
+    // the following responses wait until the whole stream was written
+    pending = pending.thenRun(() -> queue.add(response)).thenCompose(v -> response.written);
+  }
+
+  /**
+   * Returns the number of responses sent but not completely written yet, so
+   * producers can wait for a slow client instead of queueing more
+   */
+  public int size() {
+    return size.get();
+  }
+
+  /**
+   * Drops the responses sent from now on, stops the stream being written and
+   * wakes up the writer thread
+   */
+  public void close() {
+    closed = true;
+    queue.add(CLOSED);
+  }
+
+  /**
+   * Blocks until there is a response to write, returns false once the queue
+   * was closed. Only called by the writer thread.
+   */
+  public boolean await() throws InterruptedException {
+    if (next == null && !closed) {
+      next = queue.take();
+    }
+    return next != CLOSED && !closed;
+  }
+
+  /**
+   * Writes the queued responses without flushing and returns the number of
+   * bytes written. Only called by the writer thread.
+   */
+  public long writeTo(OutputStream out) throws IOException {
+    long written = 0;
+    Object item = next;
+    next = null;
+    while (item != null || (item = queue.poll()) != null) {
+      if (item == CLOSED) {
+        next = CLOSED;
+        break;
+      } else if (item instanceof byte[] line) {
+        out.write(line);
+        written += line.length;
+      } else {
+        written += writeStream((StreamedResponse) item, out);
+      }
+      size.decrementAndGet();
+      item = null;
+    }
+    return written;
+  }
+
+  /**
+   * Writes the stream chunk by chunk, blocking on the socket keeps the
+   * producer from running ahead of the client
+   */
+  private long writeStream(StreamedResponse response, OutputStream out) throws IOException {
+    long written = 0;
+    try {
+      boolean more = true;
+      while (more && !closed) {
+        chunk.reset();
+        try {
+          more = response.stream.writeNext(chunk);
+        } catch (Exception e) {
+          // streams fail on purpose once the session closes
+          if (!closed) {
+            errorHandler.accept(e);
+          }
+          more = false;
+        }
+        chunk.writeTo(out);
+        written += chunk.length();
+      }
+      out.write('\n');
+      written++;
+    } finally {
+      response.written.complete(null);
+    }
+    return written;
+  }
+
+}
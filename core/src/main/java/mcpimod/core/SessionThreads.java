@@ -0,0 +1,67 @@
+package mcpimod.core;
+
+import java.lang.reflect.Method;
+
+/**
+ * Starts the reader and writer threads of the sessions. On Java 21 and later
+ * they are virtual threads, so a blocked socket doesn't hold a platform
+ * thread and thousands of sessions stay cheap. The mod is compiled for
+ * Java 17, so the virtual thread API is looked up at runtime and platform
+ * threads are used where it is missing.
+ */
+public class SessionThreads {
+
+  /** Whether the runtime supports virtual threads */
+  public static final boolean VIRTUAL_AVAILABLE;
+
+  /** Synced with the mcpiVirtualThreads gamerule, only affects new sessions */
+  public static boolean USE_VIRTUAL = true;
+
+  // Thread.ofVirtual() and Thread.Builder.name / unstarted
+  private static final Method OF_VIRTUAL;
+  private static final Method NAME;
+  private static final Method UNSTARTED;
+
+  static {
+    Method ofVirtual = null;
+    Method name = null;
+    Method unstarted = null;
+    try {
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      Class<?> builder = Class.forName("java.lang.Thread$Builder");
+      name = builder.getMethod("name", String.class);
+      unstarted = builder.getMethod("unstarted", Runnable.class);
+      // a preview feature on Java 19 and 20, which fails unless enabled
+      unstarted.invoke(ofVirtual.invoke(null), (Runnable) () -> {
+      });
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      ofVirtual = null;
+    }
+    VIRTUAL_AVAILABLE = ofVirtual != null;
+    OF_VIRTUAL = ofVirtual;
+    NAME = name;
+    UNSTARTED = unstarted;
+  }
+
+  /** Returns "virtual" or "platform", the kind of thread new sessions get */
+  public static String getMode() {
+    return VIRTUAL_AVAILABLE && USE_VIRTUAL ? "virtual" : "platform";
+  }
+
+  public static Thread start(String name, Runnable task) {
+    Thread thread = null;
+    if (VIRTUAL_AVAILABLE && USE_VIRTUAL) {
+      try {
+        thread = (Thread) UNSTARTED.invoke(NAME.invoke(OF_VIRTUAL.invoke(null), name), task);
+      } catch (ReflectiveOperationException e) {
+        // can't happen after the check above, but platform threads always work
+      }
+    }
+    if (thread == null) {
+      thread = new Thread(task, name);
+    }
+    thread.start();
+    return thread;
+  }
+
+}
@@ -0,0 +1,139 @@
+package mcpimod.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A snapshot of a large box which is captured one x slice of sections at a
+ * time while it is read, so only a few slices are held at once no matter
+ * how large the box is. The thread owning the world captures the slices
+ * ahead of the reader in {@link #capture}, the reading thread waits for
+ * them and drops them again with {@link #release}. Blocks written before
+ * the last slice is captured would show up in the later slices, so the
+ * session holds back its own writes until {@link #capture} returns true.
+ */
+public class SliceSnapshot implements BlockSnapshot {
+
+  /** Slices captured in front of the one being read */
+  public static final int SLICES_AHEAD = 4;
+
+  /**
+   * Captures the sections of one x slice ({@code x >> 4}) of the box, on the thread
+   * owning the world. Returns null if it can't be captured yet, e.g. while
+   * its chunks are loading.
+   */
+  public interface SliceSource {
+    BlockSnapshot capture(int sectionX);
+  }
+
+  private final SliceSource source;
+  private final int maxSectionX;
+
+  private final ConcurrentHashMap<Integer, BlockSnapshot> slices = new ConcurrentHashMap<>();
+
+  // a lock instead of a monitor, a virtual thread waiting in Object.wait would pin its carrier
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition captured = lock.newCondition();
+
+  /** The next slice to capture, only used by the owning thread */
+  private int nextCapture;
+
+  /** The slice the reader is at */
+  private volatile int reading;
+
+  private volatile boolean cancelled = false;
+
+  // the slice read last, only used by the reading thread
+  private BlockSnapshot current = null;
+  private int currentX;
+
+  public SliceSnapshot(SliceSource source, int x1, int x2) {
+    this.source = source;
+    this.nextCapture = Math.min(x1, x2) >> 4;
+    this.maxSectionX = Math.max(x1, x2) >> 4;
+    this.reading = nextCapture;
+  }
+
+  /**
+   * Captures the slices up to SLICES_AHEAD in front of the reader. Called by
+   * the owning thread once when the snapshot is created and then every tick,
+   * returns true once every slice was captured.
+   */
+  public boolean capture() {
+    while (!cancelled && nextCapture <= maxSectionX && nextCapture < reading + SLICES_AHEAD) {
+      BlockSnapshot slice = source.capture(nextCapture);
+      if (slice == null) {
+        return false;
+      }
+      slices.put(nextCapture, slice);
+      nextCapture++;
+      signal();
+    }
+    return cancelled || nextCapture > maxSectionX;
+  }
+
+  /** Drops the captured slices and stops waiting readers, which fail */
+  public void cancel() {
+    cancelled = true;
+    slices.clear();
+    signal();
+  }
+
+  private void signal() {
+    lock.lock();
+    try {
+      captured.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Blocks until the slice of the position was captured */
+  @Override
+  public int getBlockId(int x, int y, int z) {
+    int sx = x >> 4;
+    if (current == null || currentX != sx) {
+      current = await(sx);
+      currentX = sx;
+    }
+    return current.getBlockId(x, y, z);
+  }
+
+  private BlockSnapshot await(int sx) {
+    if (sx > reading) {
+      reading = sx;
+    }
+    BlockSnapshot slice = slices.get(sx);
+    if (slice != null) {
+      return slice;
+    }
+    lock.lock();
+    try {
+      while ((slice = slices.get(sx)) == null) {
+        if (cancelled) {
+          throw new IllegalStateException("Snapshot was cancelled");
+        }
+        captured.await();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the snapshot", e);
+    } finally {
+      lock.unlock();
+    }
+    return slice;
+  }
+
+  @Override
+  public void release(int sectionX) {
+    slices.remove(sectionX);
+    if (current != null && currentX == sectionX) {
+      current = null;
+    }
+    if (sectionX + 1 > reading) {
+      reading = sectionX + 1;
+    }
+  }
+
+}
@@ -0,0 +1,53 @@
+package mcpimod.core;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * Charges every byte read to the bytes per second limit of a
+ * {@link RateLimiter} and stops reading while the session is over it, so
+ * TCP slows the client down. Charged as the bytes arrive, so long lines and
+ * lines which never end are limited as well.
+ */
+public class ThrottledInputStream extends FilterInputStream {
+
+  private final RateLimiter limiter;
+
+  public ThrottledInputStream(InputStream in, RateLimiter limiter) {
+    super(in);
+    this.limiter = limiter;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int b = super.read();
+    if (b >= 0) {
+      charge(1);
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int n = super.read(b, off, len);
+    if (n > 0) {
+      charge(n);
+    }
+    return n;
+  }
+
+  private void charge(int count) throws IOException {
+    long wait = limiter.bytesRead(count);
+    if (wait > 0) {
+      try {
+        Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while over the bytes per second limit");
+      }
+    }
+  }
+
+}
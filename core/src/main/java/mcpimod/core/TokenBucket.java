@@ -0,0 +1,44 @@
+package mcpimod.core;
+
+/**
+ * Tokens refilled at a fixed rate, up to one second worth of them. Taking
+ * more than there are leaves the bucket in debt, which is refilled before
+ * tokens are available again, so a large command is paid back afterwards.
+ */
+public class TokenBucket {
+
+  private final double perNano;
+  private final double capacity;
+
+  private double tokens;
+  private long refilledAt = System.nanoTime();
+
+  public TokenBucket(double perSecond) {
+    this.perNano = perSecond / 1e9;
+    this.capacity = perSecond;
+    this.tokens = capacity;
+  }
+
+  public synchronized boolean isAvailable() {
+    refill();
+    return tokens > 0;
+  }
+
+  public synchronized void take(double count) {
+    refill();
+    tokens -= count;
+  }
+
+  /** Returns 0 if tokens are available, otherwise how long the debt takes to refill */
+  public synchronized long nanosUntilAvailable() {
+    refill();
+    return tokens > 0 ? 0 : (long) Math.ceil(-tokens / perNano) + 1;
+  }
+
+  private void refill() {
+    long now = System.nanoTime();
+    tokens = Math.min(capacity, tokens + (now - refilledAt) * perNano);
+    refilledAt = now;
+  }
+
+}
@@ -0,0 +1,25 @@
+package mcpimod.core;
+
+/**
+ * The world as seen by the protocol core. The mod adapts a ServerWorld,
+ * {@link FakeWorld} keeps the blocks in memory for tests and benchmarks.
+ * Only used on the thread owning the world.
+ */
+public interface WorldAccess {
+
+  /** Copies every section touched by the box spanned by the two corners */
+  BlockSnapshot snapshot(int x1, int y1, int z1, int x2, int y2, int z2);
+
+  /**
+   * Like {@link #snapshot}, for boxes which are read from start to end in x
+   * order. The mod captures these a slice at a time while they are read,
+   * see {@link SliceSnapshot}.
+   */
+  default BlockSnapshot streamSnapshot(int x1, int y1, int z1, int x2, int y2, int z2) {
+    return snapshot(x1, y1, z1, x2, y2, z2);
+  }
+
+  /** Places a block by api id and data value */
+  void setBlock(int x, int y, int z, int blockId, int blockData);
+
+}
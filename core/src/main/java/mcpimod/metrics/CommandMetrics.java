@@ -0,0 +1,50 @@
+package mcpimod.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts and times the remote commands by command type. Recording only
+ * touches atomics, so it is cheap enough to run for every command.
+ */
+public class CommandMetrics {
+
+  public static class CommandStats {
+    /** Time spent executing the command on the server thread */
+    public final LatencyHistogram execution = new LatencyHistogram();
+    /** Time between receiving the command and starting to execute it */
+    public final LatencyHistogram queueWait = new LatencyHistogram();
+  }
+
+  // clients can send any command name, the others are counted together
+  private static final int MAX_COMMAND_TYPES = 256;
+  public static final String OTHER = "other";
+
+  private static final Map<String, CommandStats> COMMANDS = new ConcurrentHashMap<>();
+
+  /** Ticks in which a session reached mcpiMaxCommandsPerTick */
+  public static final LongAdder LIMITED_TICKS = new LongAdder();
+
+  public static void record(String command, long queueWaitNanos, long executionNanos) {
+    CommandStats stats = COMMANDS.get(command);
+    if (stats == null) {
+      if (COMMANDS.size() >= MAX_COMMAND_TYPES) {
+        command = OTHER;
+      }
+      stats = COMMANDS.computeIfAbsent(command, k -> new CommandStats());
+    }
+    stats.execution.record(executionNanos);
+    stats.queueWait.record(queueWaitNanos);
+  }
+
+  public static Map<String, CommandStats> getCommands() {
+    return COMMANDS;
+  }
+
+  /** Formats nanoseconds as milliseconds for the stats command */
+  public static String formatMillis(long nanos) {
+    return String.format("%.3f ms", nanos / 1e6);
+  }
+
+}
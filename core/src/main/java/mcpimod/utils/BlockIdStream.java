@@ -0,0 +1,58 @@
+package mcpimod.utils;
+
+import mcpimod.core.BlockSnapshot;
+
+/**
+ * Streams the api ids of a box from a snapshot as "id,id,...", ordered by
+ * x, then z, then y like world.getBlocks. Sections are released from the
+ * snapshot once the stream has moved past them.
+ */
+public class BlockIdStream implements ResponseStream {
+
+  private final BlockSnapshot snapshot;
+  private final int minX, minY, minZ, maxX, maxY, maxZ;
+
+  private int x, z;
+  private boolean first = true;
+
+  public BlockIdStream(BlockSnapshot snapshot, int x1, int y1, int z1, int x2, int y2, int z2) {
+    this.snapshot = snapshot;
+    minX = Math.min(x1, x2);
+    maxX = Math.max(x1, x2);
+    minY = Math.min(y1, y2);
+    maxY = Math.max(y1, y2);
+    minZ = Math.min(z1, z2);
+    maxZ = Math.max(z1, z2);
+    x = minX;
+    z = minZ;
+  }
+
+  @Override
+  public boolean writeNext(ResponseWriter out) {
+    int start = out.length();
+    while (x <= maxX) {
+      if (out.length() - start >= CHUNK_BYTES) {
+        return true;
+      }
+
+      // one column at a time
+      for (int y = minY; y <= maxY; y++) {
+        if (!first) {
+          out.append(',');
+        }
+        out.append(snapshot.getBlockId(x, y, z));
+        first = false;
+      }
+
+      if (++z > maxZ) {
+        z = minZ;
+        if ((x & 15) == 15 || x == maxX) {
+          snapshot.release(x >> 4);
+        }
+        x++;
+      }
+    }
+    return false;
+  }
+
+}
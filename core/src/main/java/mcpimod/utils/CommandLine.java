@@ -0,0 +1,48 @@
+package mcpimod.utils;
+
+/** A command line of the protocol split into its parts: "method(arg,arg,...)" */
+public class CommandLine {
+
+  public final String method;
+  public final String[] args;
+
+  private CommandLine(String method, String[] args) {
+    this.method = method;
+    this.args = args;
+  }
+
+  /** Throws if the line has no "(", arguments containing "," are split as well */
+  public static CommandLine parse(String line) {
+    int open = line.indexOf('(');
+    if (open < 0) {
+      throw new IllegalArgumentException("Missing ( in command: " + line);
+    }
+    String method = line.substring(0, open);
+    String[] args = line.substring(open + 1, line.length() - 1).split(",");
+    return new CommandLine(method, args);
+  }
+
+  /**
+   * Whether the server answers the command, with one line or with lines up
+   * to "end". Commands like world.setBlock get no answer at all.
+   */
+  public static boolean expectsResponse(String line) {
+    int open = line.indexOf('(');
+    String method = open < 0 ? line : line.substring(0, open);
+    if (method.endsWith(".clear")) {
+      return false;
+    }
+    return method.contains(".get") || method.contains("events.") || method.equals("world.rayCast")
+        || method.equals("world.exportRegion");
+  }
+
+  /**
+   * Whether the answer is a series of lines ending with "end". Such commands
+   * answered with "Fail" get the "end" as well, so clients reading up to it
+   * don't hang.
+   */
+  public static boolean isMultiLine(String line) {
+    return line.startsWith("world.exportRegion(") || line.equals("world.exportRegion");
+  }
+
+}
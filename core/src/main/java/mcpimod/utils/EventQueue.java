@@ -0,0 +1,54 @@
+package mcpimod.utils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Events waiting to be polled by the remote sessions, oldest first. Only
+ * used on the server thread.
+ */
+public class EventQueue<T> {
+
+  private final LinkedList<T> events = new LinkedList<>();
+
+  public void add(T event) {
+    events.add(event);
+  }
+
+  /** Removes and returns the events matching the filter */
+  public List<T> poll(Predicate<? super T> filter) {
+    List<T> result = new ArrayList<>();
+    Iterator<T> it = events.iterator();
+    while (it.hasNext()) {
+      T event = it.next();
+      if (filter.test(event)) {
+        result.add(event);
+        it.remove();
+      }
+    }
+    return result;
+  }
+
+  /** Removes and returns all events */
+  public List<T> pollAll() {
+    List<T> result = new ArrayList<>(events);
+    events.clear();
+    return result;
+  }
+
+  public void clear(Predicate<? super T> filter) {
+    events.removeIf(filter);
+  }
+
+  public void clear() {
+    events.clear();
+  }
+
+  public int size() {
+    return events.size();
+  }
+
+}
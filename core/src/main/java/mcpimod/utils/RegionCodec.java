@@ -0,0 +1,76 @@
+package mcpimod.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Base64;
+
+/**
+ * The line format used by world.exportRegion and world.importRegionData.
+ *
+ * A region is sent as its size ("sizeX,sizeY,sizeZ"), followed by data lines
+ * and a final "end" line. The blocks are ordered like world.getBlocks (x, then
+ * z, then y). Each data line holds the block states added to the palette
+ * (separated by spaces), a "|" and the base64 encoded palette indices of up
+ * to {@link #BLOCKS_PER_LINE} blocks, written as varints.
+ */
+public class RegionCodec {
+
+  public static final int BLOCKS_PER_LINE = 4096;
+
+  public static final String END = "end";
+
+  public static String encodeLine(Iterable<String> newPaletteEntries, int[] indices, int count) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(count + 16);
+    for (int i = 0; i < count; i++) {
+      int value = indices[i];
+      while ((value & ~0x7F) != 0) {
+        bytes.write((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      bytes.write(value);
+    }
+    return String.join(" ", newPaletteEntries) + "|" + Base64.getEncoder().encodeToString(bytes.toByteArray());
+  }
+
+  /** Returns the new palette entries of a data line */
+  public static String[] decodePalette(String line) {
+    int split = line.indexOf('|');
+    if (split < 0) {
+      throw new IllegalArgumentException("Missing | in region data");
+    }
+    String entries = line.substring(0, split);
+    return entries.isEmpty() ? new String[0] : entries.split(" ");
+  }
+
+  /**
+   * Returns the number of indices decoded into the given array. Throws an
+   * IllegalArgumentException if the line holds more indices than fit into
+   * the array or an index isn't a valid varint.
+   */
+  public static int decodeIndices(String line, int[] indices) {
+    byte[] bytes = Base64.getDecoder().decode(line.substring(line.indexOf('|') + 1));
+    int count = 0;
+    int value = 0;
+    int shift = 0;
+    for (byte b : bytes) {
+      if (shift > 28) {
+        throw new IllegalArgumentException("Palette index longer than 5 bytes");
+      }
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) != 0) {
+        shift += 7;
+      } else {
+        if (count == indices.length) {
+          throw new IllegalArgumentException("More than " + indices.length + " blocks in one line");
+        }
+        indices[count++] = value;
+        value = 0;
+        shift = 0;
+      }
+    }
+    if (shift != 0) {
+      throw new IllegalArgumentException("Region data ends within a palette index");
+    }
+    return count;
+  }
+
+}
@@ -0,0 +1,19 @@
+package mcpimod.utils;
+
+/**
+ * A response too large to be held in memory at once. The output thread of
+ * the session pulls it chunk by chunk, so it is only produced as fast as the
+ * socket takes it and never needs more than one chunk of memory.
+ */
+public interface ResponseStream {
+
+  /** Size at which a chunk is handed to the socket */
+  int CHUNK_BYTES = 1 << 16;
+
+  /**
+   * Appends the next part of the response (about CHUNK_BYTES, without the
+   * final newline) and returns false once the response is complete
+   */
+  boolean writeNext(ResponseWriter out);
+
+}
@@ -0,0 +1,219 @@
+package mcpimod.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Formats a response line directly into a reusable byte buffer, so numbers
+ * don't have to go through intermediate Strings. Every session owns one and
+ * only uses it on the server thread.
+ */
+public class ResponseWriter {
+
+  /**
+   * Decimal places for floating point numbers. -1 writes the shortest
+   * representation which reads back to the same number. Synced with the
+   * mcpiDecimalPlaces gamerule.
+   */
+  public static int DECIMAL_PLACES = -1;
+
+  private static final long[] POWERS_OF_TEN = new long[19];
+
+  // above this the digits can't be checked exactly with a double division
+  private static final long MAX_EXACT = 1L << 53;
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private byte[] buffer = new byte[256];
+  private int length = 0;
+
+  /** Starts a new line */
+  public ResponseWriter reset() {
+    length = 0;
+    return this;
+  }
+
+  public ResponseWriter append(char c) {
+    ensureCapacity(1);
+    buffer[length++] = (byte) c;
+    return this;
+  }
+
+  public ResponseWriter append(int value) {
+    return append((long) value);
+  }
+
+  public ResponseWriter append(long value) {
+    if (value == Long.MIN_VALUE) {
+      return appendAscii(Long.toString(value));
+    }
+    ensureCapacity(20);
+    if (value < 0) {
+      buffer[length++] = '-';
+      value = -value;
+    }
+    int digits = 1;
+    while (digits < 19 && value >= POWERS_OF_TEN[digits]) {
+      digits++;
+    }
+    for (int i = length + digits - 1; i >= length; i--) {
+      buffer[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    length += digits;
+    return this;
+  }
+
+  public ResponseWriter append(double value) {
+    if (DECIMAL_PLACES >= 0) {
+      return appendFixed(value, DECIMAL_PLACES);
+    }
+    if (!appendShortest(value, false)) {
+      appendAscii(Double.toString(value));
+    }
+    return this;
+  }
+
+  public ResponseWriter append(float value) {
+    if (DECIMAL_PLACES >= 0) {
+      return appendFixed(value, DECIMAL_PLACES);
+    }
+    if (!appendShortest(value, true)) {
+      appendAscii(Float.toString(value));
+    }
+    return this;
+  }
+
+  /**
+   * Writes the fewest decimal places which read back as the same number, in
+   * the same format as Double.toString. Returns false for numbers it leaves
+   * to Double.toString: those written in scientific notation, NaN, infinity
+   * and ones with too many digits.
+   */
+  private boolean appendShortest(double value, boolean isFloat) {
+    double abs = Math.abs(value);
+    if (abs != 0 && (abs < 1e-3 || abs >= 1e7) || Double.isNaN(value)) {
+      return false;
+    }
+    if (abs == 0) {
+      appendAscii(Double.doubleToRawLongBits(value) < 0 ? "-0.0" : "0.0");
+      return true;
+    }
+
+    for (int places = 1; places < POWERS_OF_TEN.length; places++) {
+      long scale = POWERS_OF_TEN[places];
+      double scaled = abs * scale;
+      if (scaled >= MAX_EXACT) {
+        return false;
+      }
+      // the multiplication may be off by one in the last digit
+      long rounded = Math.round(scaled);
+      long digits = readsBackAs(rounded, scale, abs, isFloat) ? rounded
+          : readsBackAs(rounded - 1, scale, abs, isFloat) ? rounded - 1
+          : readsBackAs(rounded + 1, scale, abs, isFloat) ? rounded + 1 : -1;
+      if (digits > 0) {
+        if (value < 0) {
+          append('-');
+        }
+        appendDigits(digits, scale, places);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** digits / scale is exact up to one rounding, so this matches parsing the decimal */
+  private static boolean readsBackAs(long digits, long scale, double value, boolean isFloat) {
+    double parsed = (double) digits / scale;
+    return isFloat ? (float) parsed == (float) value : parsed == value;
+  }
+
+  /** Writes the number rounded to a fixed number of decimal places */
+  public ResponseWriter appendFixed(double value, int decimalPlaces) {
+    decimalPlaces = Math.min(decimalPlaces, 9);
+    long scale = POWERS_OF_TEN[decimalPlaces];
+    // numbers which don't fit into a long once scaled (and NaN / infinity) are rare enough
+    if (!(Math.abs(value) < (double) Long.MAX_VALUE / scale)) {
+      return appendAscii(Double.toString(value));
+    }
+
+    long scaled = Math.round(Math.abs(value) * scale);
+    if (value < 0 && scaled != 0) {
+      append('-');
+    }
+    appendDigits(scaled, scale, decimalPlaces);
+    return this;
+  }
+
+  /** Writes scaled / scale with the given number of decimal places */
+  private void appendDigits(long scaled, long scale, int decimalPlaces) {
+    append(scaled / scale);
+    if (decimalPlaces > 0) {
+      ensureCapacity(decimalPlaces + 1);
+      buffer[length++] = '.';
+      long fraction = scaled % scale;
+      for (int i = length + decimalPlaces - 1; i >= length; i--) {
+        buffer[i] = (byte) ('0' + fraction % 10);
+        fraction /= 10;
+      }
+      length += decimalPlaces;
+    }
+  }
+
+  public ResponseWriter append(String s) {
+    int n = s.length();
+    ensureCapacity(n);
+    for (int i = 0; i < n; i++) {
+      char c = s.charAt(i);
+      if (c >= 0x80) {
+        // not plain ascii, let the JDK encode the rest
+        byte[] encoded = s.substring(i).getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(encoded.length);
+        System.arraycopy(encoded, 0, buffer, length, encoded.length);
+        length += encoded.length;
+        return this;
+      }
+      buffer[length++] = (byte) c;
+    }
+    return this;
+  }
+
+  private ResponseWriter appendAscii(String s) {
+    int n = s.length();
+    ensureCapacity(n);
+    for (int i = 0; i < n; i++) {
+      buffer[length++] = (byte) s.charAt(i);
+    }
+    return this;
+  }
+
+  public int length() {
+    return length;
+  }
+
+  /** Returns a copy of the line, terminated with a newline */
+  public byte[] toLine() {
+    byte[] line = Arrays.copyOf(buffer, length + 1);
+    line[length] = '\n';
+    return line;
+  }
+
+  /** Writes the buffer as it is, without a newline */
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(buffer, 0, length);
+  }
+
+  private void ensureCapacity(int additional) {
+    if (length + additional > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + additional));
+    }
+  }
+
+}
@@ -0,0 +1,121 @@
+package mcpimod.utils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the files written by {@link TrafficRecorder}. Doesn't depend on
+ * Minecraft, so the load generator can replay recordings.
+ */
+public class TrafficRecording {
+
+  public static final byte[] MAGIC = "MCPIREC1".getBytes(StandardCharsets.US_ASCII);
+
+  public static class Entry {
+    /** Server tick the line arrived in */
+    public final long tick;
+    /** Nanoseconds since the first line */
+    public final long nanos;
+    public final String line;
+
+    private Entry(long tick, long nanos, String line) {
+      this.tick = tick;
+      this.nanos = nanos;
+      this.line = line;
+    }
+  }
+
+  public final long startMillis;
+  public final String address;
+  public final List<Entry> entries;
+
+  private TrafficRecording(long startMillis, String address, List<Entry> entries) {
+    this.startMillis = startMillis;
+    this.address = address;
+    this.entries = entries;
+  }
+
+  public static boolean isRecording(Path file) throws IOException {
+    try (InputStream in = Files.newInputStream(file)) {
+      return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+    }
+  }
+
+  public static TrafficRecording read(Path file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      byte[] magic = in.readNBytes(MAGIC.length);
+      if (!Arrays.equals(magic, MAGIC)) {
+        throw new IOException("Not a session recording: " + file);
+      }
+      long startMillis = in.readLong();
+      String address = new String(in.readNBytes((int) readVarLong(in)), StandardCharsets.UTF_8);
+
+      List<Entry> entries = new ArrayList<>();
+      long tick = 0;
+      long nanos = 0;
+      while (true) {
+        int first = in.read();
+        if (first < 0) {
+          break;
+        }
+        try {
+          tick += readVarLong(in, first);
+          nanos += readVarLong(in);
+          int length = (int) readVarLong(in);
+          byte[] line = in.readNBytes(length);
+          if (line.length < length) {
+            throw new EOFException();
+          }
+          entries.add(new Entry(tick, nanos, new String(line, StandardCharsets.UTF_8)));
+        } catch (EOFException e) {
+          // the server stopped while writing the last entry
+          break;
+        }
+      }
+      return new TrafficRecording(startMillis, address, entries);
+    }
+  }
+
+  /** Writes an unsigned varint, 7 bits per byte, at most 10 bytes */
+  public static void putVarLong(ByteBuffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  private static long readVarLong(InputStream in) throws IOException {
+    int first = in.read();
+    if (first < 0) {
+      throw new EOFException();
+    }
+    return readVarLong(in, first);
+  }
+
+  private static long readVarLong(InputStream in, int first) throws IOException {
+    long value = first & 0x7F;
+    int shift = 7;
+    int b = first;
+    while ((b & 0x80) != 0) {
+      b = in.read();
+      if (b < 0) {
+        throw new EOFException();
+      }
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    }
+    return value;
+  }
+
+}
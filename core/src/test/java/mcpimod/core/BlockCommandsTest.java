@@ -0,0 +1,91 @@
+package mcpimod.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import mcpimod.utils.CommandLine;
+
+class BlockCommandsTest {
+
+  private final FakeWorld world = new FakeWorld();
+  // queries run right away, so every answer is queued when handle returns
+  private final ResponseQueue responses = new ResponseQueue(Runnable::run, Throwable::printStackTrace);
+
+  private boolean handle(String line) {
+    CommandLine command = CommandLine.parse(line);
+    return BlockCommands.handle(command.method, command.args, world, responses);
+  }
+
+  private String answers() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    while (responses.size() > 0) {
+      responses.await();
+      responses.writeTo(out);
+    }
+    return out.toString(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void setBlockThenGetBlock() throws Exception {
+    assertTrue(handle("world.setBlock(1,2,3,4)"));
+    assertTrue(handle("world.getBlock(1,2,3)"));
+    assertTrue(handle("world.getBlock(1,2,4)"));
+
+    assertEquals("4\n0\n", answers());
+    assertEquals(4, world.getBlockId(1, 2, 3));
+  }
+
+  @Test
+  void decimalCoordinatesAreCutOff() throws Exception {
+    handle("world.setBlock(-5.7,10.2,8.9,7)");
+    handle("world.getBlock(-5,10,8)");
+
+    assertEquals("7\n", answers());
+  }
+
+  @Test
+  void getBlocksIsOrderedByXThenZThenY() throws Exception {
+    world.setBlock(0, 0, 0, 1, 0);
+    world.setBlock(0, 1, 0, 2, 0);
+    world.setBlock(0, 0, 1, 3, 0);
+    world.setBlock(1, 0, 0, 4, 0);
+
+    handle("world.getBlocks(0,0,0,1,1,1)");
+
+    assertEquals("1,2,3,0,4,0,0,0\n", answers());
+  }
+
+  @Test
+  void getBlocksAcrossSections() throws Exception {
+    world.setBlock(15, 64, -1, 5, 0);
+    world.setBlock(16, 64, 0, 6, 0);
+
+    handle("world.getBlocks(15,64,-1,16,64,0)");
+
+    assertEquals("5,0,0,6\n", answers());
+  }
+
+  @Test
+  void getHeightReturnsTheHighestBlock() throws Exception {
+    world.setBlock(3, 10, 3, 1, 0);
+    world.setBlock(3, 70, 3, 1, 0);
+
+    handle("world.getHeight(3,3)");
+    handle("world.getHeight(4,4)");
+
+    assertEquals("70\n0\n", answers());
+  }
+
+  @Test
+  void otherCommandsAreNotHandled() {
+    assertFalse(handle("chat.post(hello)"));
+    assertEquals(0, responses.size());
+  }
+
+}
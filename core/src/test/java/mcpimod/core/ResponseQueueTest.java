@@ -0,0 +1,113 @@
+package mcpimod.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import mcpimod.utils.ResponseStream;
+import mcpimod.utils.ResponseWriter;
+
+class ResponseQueueTest {
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @AfterEach
+  void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /** Writes until the expected number of lines arrived */
+  private static String read(ResponseQueue queue, int lines) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    String text = "";
+    while (text.chars().filter(c -> c == '\n').count() < lines) {
+      queue.await();
+      queue.writeTo(out);
+      text = out.toString(StandardCharsets.UTF_8);
+    }
+    return text;
+  }
+
+  private static byte[] line(String text) {
+    return new ResponseWriter().append(text).toLine();
+  }
+
+  @Test
+  void keepsTheOrderOfTheCommands() throws Exception {
+    ResponseQueue queue = new ResponseQueue(executor, Throwable::printStackTrace);
+
+    queue.send(line("a"));
+    queue.sendAsync(out -> {
+      sleep(50);
+      out.append("b");
+    });
+    queue.send(line("c"));
+    queue.sendAsync(out -> out.append("d"));
+    queue.sendStream(new ResponseStream() {
+      private int part = 0;
+
+      @Override
+      public boolean writeNext(ResponseWriter out) {
+        out.append("e").append(part);
+        return ++part < 3;
+      }
+    });
+    queue.send(line("f"));
+
+    assertEquals("a\nb\nc\nd\ne0e1e2\nf\n", read(queue, 6));
+    assertEquals(0, queue.size());
+  }
+
+  @Test
+  void countsTheResponsesNotWrittenYet() throws Exception {
+    ResponseQueue queue = new ResponseQueue(executor, Throwable::printStackTrace);
+    for (int i = 0; i < 10; i++) {
+      queue.send(line(Integer.toString(i)));
+    }
+    assertEquals(10, queue.size());
+
+    read(queue, 10);
+    assertEquals(0, queue.size());
+  }
+
+  @Test
+  void skipsFailedQueries() throws Exception {
+    int[] errors = { 0 };
+    ResponseQueue queue = new ResponseQueue(executor, e -> errors[0]++);
+
+    queue.sendAsync(out -> {
+      throw new IllegalStateException("query failed");
+    });
+    queue.send(line("after"));
+
+    assertEquals("after\n", read(queue, 1));
+    assertEquals(1, errors[0]);
+    assertEquals(0, queue.size());
+  }
+
+  @Test
+  void dropsResponsesOnceClosed() throws Exception {
+    ResponseQueue queue = new ResponseQueue(executor, Throwable::printStackTrace);
+    queue.close();
+    queue.send(line("dropped"));
+
+    assertFalse(queue.await());
+    assertEquals(0, queue.size());
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
@@ -0,0 +1,71 @@
+package mcpimod.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class SliceSnapshotTest {
+
+  private final FakeWorld world = new FakeWorld();
+
+  private SliceSnapshot snapshot(int x1, int x2, AtomicInteger captured) {
+    return new SliceSnapshot(sx -> {
+      captured.incrementAndGet();
+      return world.snapshot(sx << 4, 0, 0, (sx << 4) + 15, 15, 0);
+    }, x1, x2);
+  }
+
+  @Test
+  void capturesOnlyAheadOfTheReader() {
+    AtomicInteger captured = new AtomicInteger();
+    SliceSnapshot snapshot = snapshot(0, 16 * 10 - 1, captured);
+
+    assertFalse(snapshot.capture());
+    assertEquals(SliceSnapshot.SLICES_AHEAD, captured.get());
+
+    snapshot.release(0);
+    snapshot.release(1);
+    assertFalse(snapshot.capture());
+    assertEquals(SliceSnapshot.SLICES_AHEAD + 2, captured.get());
+  }
+
+  @Test
+  void readsTheCapturedBlocks() throws Exception {
+    world.setBlock(5, 3, 0, 9, 0);
+    world.setBlock(100, 3, 0, 8, 0);
+    SliceSnapshot snapshot = snapshot(0, 110, new AtomicInteger());
+    snapshot.capture();
+
+    assertEquals(9, snapshot.getBlockId(5, 3, 0));
+    snapshot.release(0);
+
+    // the reader waits until the owning thread captured the slice
+    Thread owner = new Thread(() -> {
+      while (!snapshot.capture()) {
+        Thread.onSpinWait();
+      }
+    });
+    owner.start();
+    assertEquals(8, snapshot.getBlockId(100, 3, 0));
+    for (int sx = 1; sx <= 100 >> 4; sx++) {
+      snapshot.release(sx);
+    }
+    owner.join();
+  }
+
+  @Test
+  void cancelStopsTheReader() {
+    SliceSnapshot snapshot = new SliceSnapshot(sx -> null, 0, 15);
+    assertFalse(snapshot.capture());
+
+    snapshot.cancel();
+    assertTrue(snapshot.capture());
+    assertThrows(IllegalStateException.class, () -> snapshot.getBlockId(0, 0, 0));
+  }
+
+}
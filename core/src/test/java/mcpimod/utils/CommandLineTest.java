@@ -0,0 +1,52 @@
+package mcpimod.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class CommandLineTest {
+
+  @Test
+  void splitsMethodAndArguments() {
+    CommandLine line = CommandLine.parse("world.setBlock(1,2,3,4)");
+
+    assertEquals("world.setBlock", line.method);
+    assertArrayEquals(new String[] { "1", "2", "3", "4" }, line.args);
+  }
+
+  @Test
+  void rejectsLinesWithoutArguments() {
+    assertThrows(IllegalArgumentException.class, () -> CommandLine.parse("world.getPlayerIds"));
+  }
+
+  @Test
+  void queriesExpectAResponse() {
+    assertTrue(CommandLine.expectsResponse("world.getBlock(0,0,0)"));
+    assertTrue(CommandLine.expectsResponse("entity.getPosMany(1,2)"));
+    assertTrue(CommandLine.expectsResponse("events.block.hits()"));
+    assertTrue(CommandLine.expectsResponse("player.events.chat.posts()"));
+    assertTrue(CommandLine.expectsResponse("world.rayCast(0,0,0,1,0,0,10)"));
+    assertTrue(CommandLine.expectsResponse("world.exportRegion(0,0,0,1,1,1)"));
+  }
+
+  @Test
+  void writesExpectNoResponse() {
+    assertFalse(CommandLine.expectsResponse("world.setBlock(0,0,0,1)"));
+    assertFalse(CommandLine.expectsResponse("chat.post(hi)"));
+    assertFalse(CommandLine.expectsResponse("events.clear()"));
+    assertFalse(CommandLine.expectsResponse("entity.events.clear(1)"));
+    assertFalse(CommandLine.expectsResponse("world.importRegionData(|AA==)"));
+  }
+
+  @Test
+  void onlyExportsAnswerWithManyLines() {
+    assertTrue(CommandLine.isMultiLine("world.exportRegion(0,0,0,1,1,1)"));
+    assertFalse(CommandLine.isMultiLine("world.getBlocks(0,0,0,1,1,1)"));
+    assertFalse(CommandLine.isMultiLine("world.importRegion(0,0,0,1,1,1)"));
+  }
+
+}
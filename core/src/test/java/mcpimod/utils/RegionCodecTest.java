@@ -0,0 +1,67 @@
+package mcpimod.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class RegionCodecTest {
+
+  @Test
+  void roundTrip() {
+    int[] indices = new int[RegionCodec.BLOCKS_PER_LINE];
+    Random random = new Random(1);
+    for (int i = 0; i < indices.length; i++) {
+      // small and multi byte varints
+      indices[i] = random.nextBoolean() ? random.nextInt(128) : random.nextInt(1 << 20);
+    }
+    List<String> palette = List.of("minecraft:stone", "minecraft:oak_stairs[facing=east,half=top]");
+
+    String line = RegionCodec.encodeLine(palette, indices, indices.length);
+
+    assertArrayEquals(palette.toArray(), RegionCodec.decodePalette(line));
+    int[] decoded = new int[RegionCodec.BLOCKS_PER_LINE];
+    assertEquals(indices.length, RegionCodec.decodeIndices(line, decoded));
+    assertArrayEquals(indices, decoded);
+  }
+
+  @Test
+  void lineWithoutNewPaletteEntries() {
+    int[] indices = { 0, 1, 1, 0, 2 };
+
+    String line = RegionCodec.encodeLine(List.of(), indices, 3);
+
+    assertEquals(0, RegionCodec.decodePalette(line).length);
+    int[] decoded = new int[RegionCodec.BLOCKS_PER_LINE];
+    assertEquals(3, RegionCodec.decodeIndices(line, decoded));
+    assertArrayEquals(Arrays.copyOf(indices, 3), Arrays.copyOf(decoded, 3));
+  }
+
+  @Test
+  void rejectsLinesWithTooManyBlocks() {
+    int[] indices = new int[RegionCodec.BLOCKS_PER_LINE + 1];
+    String line = RegionCodec.encodeLine(List.of(), indices, indices.length);
+
+    assertThrows(IllegalArgumentException.class,
+        () -> RegionCodec.decodeIndices(line, new int[RegionCodec.BLOCKS_PER_LINE]));
+  }
+
+  @Test
+  void rejectsBrokenIndices() {
+    int[] decoded = new int[RegionCodec.BLOCKS_PER_LINE];
+    Base64.Encoder base64 = Base64.getEncoder();
+    String tooLong = "|" + base64.encodeToString(new byte[] { -1, -1, -1, -1, -1, 1 });
+    String unfinished = "|" + base64.encodeToString(new byte[] { 5, -1 });
+
+    assertThrows(IllegalArgumentException.class, () -> RegionCodec.decodeIndices(tooLong, decoded));
+    assertThrows(IllegalArgumentException.class, () -> RegionCodec.decodeIndices(unfinished, decoded));
+    assertThrows(IllegalArgumentException.class, () -> RegionCodec.decodePalette("minecraft:stone"));
+  }
+
+}
@@ -0,0 +1,85 @@
+package mcpimod.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TrafficRecordingTest {
+
+  @TempDir
+  Path directory;
+
+  /** Writes a recording in the format of TrafficRecorder */
+  private Path write(String address, long[] ticks, long[] nanos, String[] lines) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+    buffer.put(TrafficRecording.MAGIC);
+    buffer.putLong(1234L);
+    byte[] addressBytes = address.getBytes(StandardCharsets.UTF_8);
+    TrafficRecording.putVarLong(buffer, addressBytes.length);
+    buffer.put(addressBytes);
+    for (int i = 0; i < lines.length; i++) {
+      byte[] bytes = lines[i].getBytes(StandardCharsets.UTF_8);
+      TrafficRecording.putVarLong(buffer, i == 0 ? ticks[i] : ticks[i] - ticks[i - 1]);
+      TrafficRecording.putVarLong(buffer, i == 0 ? 0 : nanos[i] - nanos[i - 1]);
+      TrafficRecording.putVarLong(buffer, bytes.length);
+      buffer.put(bytes);
+    }
+    Path file = directory.resolve("session.mcpirec");
+    Files.write(file, Arrays.copyOf(buffer.array(), buffer.position()));
+    return file;
+  }
+
+  @Test
+  void roundTrip() throws IOException {
+    String[] lines = { "world.setBlock(1,2,3,4)", "chat.post(gr\u00fc\u00dfe)", "x".repeat(100_000), "" };
+    Path file = write("/127.0.0.1:50000", new long[] { 100, 100, 101, 5000 },
+        new long[] { 7, 1_000_007, 3_000_000_007L, 3_000_000_008L }, lines);
+
+    assertTrue(TrafficRecording.isRecording(file));
+    TrafficRecording recording = TrafficRecording.read(file);
+
+    assertEquals(1234L, recording.startMillis);
+    assertEquals("/127.0.0.1:50000", recording.address);
+    assertEquals(lines.length, recording.entries.size());
+    long[] ticks = { 100, 100, 101, 5000 };
+    long[] nanos = { 0, 1_000_000, 3_000_000_000L, 3_000_000_001L };
+    for (int i = 0; i < lines.length; i++) {
+      assertEquals(lines[i], recording.entries.get(i).line);
+      assertEquals(ticks[i], recording.entries.get(i).tick);
+      assertEquals(nanos[i], recording.entries.get(i).nanos);
+    }
+  }
+
+  @Test
+  void truncatedLastEntryIsDropped() throws IOException {
+    Path file = write("a", new long[] { 1, 2 }, new long[] { 0, 10 }, new String[] { "first", "second" });
+    byte[] bytes = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+    TrafficRecording recording = TrafficRecording.read(file);
+
+    assertEquals(1, recording.entries.size());
+    assertEquals("first", recording.entries.get(0).line);
+  }
+
+  @Test
+  void rejectsOtherFiles() throws IOException {
+    Path file = directory.resolve("commands.txt");
+    Files.writeString(file, "world.setBlock(0,0,0,1)\n");
+
+    assertFalse(TrafficRecording.isRecording(file));
+    assertThrows(IOException.class, () -> TrafficRecording.read(file));
+  }
+
+}
@@ -0,0 +1,58 @@
+package mcpimod.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import mcpimod.utils.BlockIds;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+
+/** Mapping between api ids and block states, over every registered state */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BlockIdBenchmark {
+
+  private BlockState[] states;
+
+  @Setup
+  public void setup() {
+    MinecraftBootstrap.init();
+    List<BlockState> all = new ArrayList<>();
+    for (BlockState state : Block.STATE_IDS) {
+      all.add(state);
+    }
+    states = all.toArray(new BlockState[0]);
+  }
+
+  /** Every registered block state once */
+  @Benchmark
+  public int stateToId() {
+    int sum = 0;
+    for (BlockState state : states) {
+      sum += BlockIds.blockStateToBlockId(state);
+    }
+    return sum;
+  }
+
+  /** Every api id with every data value */
+  @Benchmark
+  public void idToState(Blackhole blackhole) {
+    for (int id = 0; id < 256; id++) {
+      for (int data = 0; data < 16; data++) {
+        blackhole.consume(BlockIds.blockIdToBlockState(id, data));
+      }
+    }
+  }
+
+}
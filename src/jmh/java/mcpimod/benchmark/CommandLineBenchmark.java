@@ -0,0 +1,48 @@
+package mcpimod.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import mcpimod.utils.CommandLine;
+
+/** Splitting received lines into method and arguments */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandLineBenchmark {
+
+  @Param({ "setBlock", "setBlocks", "chat", "getPosMany" })
+  public String kind;
+
+  private String line;
+
+  @Setup
+  public void setup() {
+    line = switch (kind) {
+      case "setBlock" -> "world.setBlock(120,64,-35,1,0)";
+      case "setBlocks" -> "world.setBlocks(-100,60,-100,100,80,100,98,2)";
+      case "chat" -> "chat.post(Hello, this is a rather long chat message, with a few commas, from a script)";
+      default -> {
+        StringBuilder ids = new StringBuilder("entity.getPosMany(");
+        for (int i = 0; i < 100; i++) {
+          ids.append(i > 0 ? "," : "").append(1000 + i);
+        }
+        yield ids.append(')').toString();
+      }
+    };
+  }
+
+  @Benchmark
+  public CommandLine parse() {
+    return CommandLine.parse(line);
+  }
+
+}
@@ -0,0 +1,75 @@
+package mcpimod.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import mcpimod.core.BlockCommands;
+import mcpimod.core.FakeWorld;
+import mcpimod.core.ResponseQueue;
+import mcpimod.utils.CommandLine;
+
+/**
+ * A command line from parsing to the written response, against the in-memory
+ * world of the core. Queries are answered on the benchmark thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+
+  private final FakeWorld world = new FakeWorld();
+  private final ResponseQueue responses = new ResponseQueue(Runnable::run, e -> {
+    throw new IllegalStateException(e);
+  });
+  private final OutputStream out = OutputStream.nullOutputStream();
+
+  private final String[] setBlocks = new String[1024];
+  private final String[] getBlocks = new String[1024];
+  private int next = 0;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(42);
+    for (int i = 0; i < setBlocks.length; i++) {
+      int x = random.nextInt(64);
+      int y = 64 + random.nextInt(16);
+      int z = random.nextInt(64);
+      setBlocks[i] = "world.setBlock(" + x + "," + y + "," + z + "," + (1 + random.nextInt(5)) + ")";
+      getBlocks[i] = "world.getBlock(" + x + "," + y + "," + z + ")";
+      world.setBlock(x, y, z, 1, 0);
+    }
+  }
+
+  @Benchmark
+  public long setBlock() throws IOException {
+    return dispatch(setBlocks[next++ & 1023]);
+  }
+
+  @Benchmark
+  public long getBlock() throws IOException {
+    return dispatch(getBlocks[next++ & 1023]);
+  }
+
+  /** One 16x16x16 region, streamed */
+  @Benchmark
+  public long getBlocks() throws IOException {
+    return dispatch("world.getBlocks(0,64,0,15,79,15)");
+  }
+
+  private long dispatch(String line) throws IOException {
+    CommandLine command = CommandLine.parse(line);
+    BlockCommands.handle(command.method, command.args, world, responses);
+    return responses.writeTo(out);
+  }
+
+}
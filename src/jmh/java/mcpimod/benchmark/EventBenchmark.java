@@ -0,0 +1,109 @@
+package mcpimod.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import mcpimod.utils.BlockEvent;
+import mcpimod.utils.EventQueue;
+import mcpimod.utils.ResponseWriter;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityType;
+import net.minecraft.entity.MarkerEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+
+/**
+ * Polling block hits from a large queue, by one entity and all at once,
+ * including the serialization of the response. Polling empties the queues,
+ * so every iteration gets a fresh batch of queues, built before it starts,
+ * and polls each of them once (single shot).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EventBenchmark {
+
+  private static final int ENTITIES = 10;
+
+  /** Queues polled per iteration */
+  private static final int BATCH = 64;
+
+  @Param({ "1000", "100000" })
+  public int queueSize;
+
+  private Entity[] entities;
+  /** Polling doesn't change the events, so the queues of a batch share them */
+  private BlockEvent[] events;
+  private final List<EventQueue<BlockEvent>> queues = new ArrayList<>();
+  private final ResponseWriter writer = new ResponseWriter();
+
+  @Setup(Level.Trial)
+  public void setupEntities() {
+    MinecraftBootstrap.init();
+    entities = new Entity[ENTITIES];
+    for (int i = 0; i < ENTITIES; i++) {
+      // entities don't need a world until they are ticked
+      entities[i] = new MarkerEntity(EntityType.MARKER, null);
+    }
+    events = new BlockEvent[queueSize];
+    for (int i = 0; i < queueSize; i++) {
+      events[i] = new BlockEvent(entities[i % ENTITIES], new BlockPos(i, 64, -i), Direction.UP);
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void fillQueues() {
+    queues.clear();
+    for (int q = 0; q < BATCH; q++) {
+      EventQueue<BlockEvent> queue = new EventQueue<>();
+      for (BlockEvent event : events) {
+        queue.add(event);
+      }
+      queues.add(queue);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public void pollOneEntity(Blackhole blackhole) {
+    Entity target = entities[0];
+    for (EventQueue<BlockEvent> queue : queues) {
+      blackhole.consume(serialize(queue.poll(event -> event.entity.equals(target))));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public void pollAll(Blackhole blackhole) {
+    for (EventQueue<BlockEvent> queue : queues) {
+      blackhole.consume(serialize(queue.pollAll()));
+    }
+  }
+
+  private byte[] serialize(Iterable<BlockEvent> events) {
+    ResponseWriter out = writer.reset();
+    boolean first = true;
+    for (BlockEvent event : events) {
+      if (!first) {
+        out.append('|');
+      }
+      event.serialize(out);
+      first = false;
+    }
+    return out.toLine();
+  }
+
+}
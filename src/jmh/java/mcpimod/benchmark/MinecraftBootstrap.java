@@ -0,0 +1,22 @@
+package mcpimod.benchmark;
+
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+
+/**
+ * Loads the vanilla registries, which the block and entity benchmarks need.
+ * Runs without the Fabric loader, so no mixins are applied.
+ */
+public class MinecraftBootstrap {
+
+  private static boolean initialized = false;
+
+  public static synchronized void init() {
+    if (!initialized) {
+      SharedConstants.createGameVersion();
+      Bootstrap.initialize();
+      initialized = true;
+    }
+  }
+
+}
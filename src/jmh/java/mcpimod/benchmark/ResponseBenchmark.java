@@ -0,0 +1,84 @@
+package mcpimod.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import mcpimod.utils.ResponseWriter;
+
+/**
+ * Formatting responses: 100 entity positions like entity.getPosMany, and
+ * 4096 block ids like a world.getBlocks of one section
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponseBenchmark {
+
+  /** -1 is the shortest representation */
+  @Param({ "-1", "3" })
+  public int decimalPlaces;
+
+  private final ResponseWriter writer = new ResponseWriter();
+  private final double[] positions = new double[300];
+  private final int[] ids = new int[4096];
+
+  @Setup
+  public void setup() {
+    ResponseWriter.DECIMAL_PLACES = decimalPlaces;
+    Random random = new Random(42);
+    for (int i = 0; i < positions.length; i++) {
+      positions[i] = (random.nextDouble() - 0.5) * 2000;
+    }
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = random.nextInt(8) == 0 ? random.nextInt(256) : 0;
+    }
+  }
+
+  @Benchmark
+  public byte[] positions() {
+    ResponseWriter out = writer.reset();
+    for (int i = 0; i < positions.length; i += 3) {
+      if (i > 0) {
+        out.append('|');
+      }
+      out.append(positions[i]).append(',').append(positions[i + 1]).append(',').append(positions[i + 2]);
+    }
+    return out.toLine();
+  }
+
+  /** The String concatenation the positions were formatted with before */
+  @Benchmark
+  public byte[] positionsConcat() {
+    StringBuilder out = new StringBuilder();
+    for (int i = 0; i < positions.length; i += 3) {
+      if (i > 0) {
+        out.append('|');
+      }
+      out.append(positions[i] + "," + positions[i + 1] + "," + positions[i + 2]);
+    }
+    return out.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public byte[] blockIds() {
+    ResponseWriter out = writer.reset();
+    for (int i = 0; i < ids.length; i++) {
+      if (i > 0) {
+        out.append(',');
+      }
+      out.append(ids[i]);
+    }
+    return out.toLine();
+  }
+
+}
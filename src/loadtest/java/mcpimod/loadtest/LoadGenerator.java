@@ -0,0 +1,137 @@
+package mcpimod.loadtest;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import mcpimod.metrics.LatencyHistogram;
+import mcpimod.utils.TrafficRecording;
+
+/**
+ * Opens many sessions to a running server and sends a command mix at a
+ * target rate, then reports the throughput and the latency of the queries
+ * as seen by the clients.
+ *
+ * Options (all optional):
+ *   --host localhost --port 4711 --sessions 10 --rate 1000 (commands/s over all sessions)
+ *   --duration 30 (seconds) --mix setblock|getblocks|events|mixed --size 16 (getBlocks edge)
+ *   --origin 0,100,0 --replay commands.txt (one command per line, replaces --mix)
+ *   --replay session.mcpirec --speed 1 (a session recording, see mcpiRecordSessions,
+ *   sent with the recorded timing sped up by --speed, or at --rate with --speed 0)
+ *   --max-p99-ms 50 --max-failed 0 (thresholds, the exit code is 1 if one is exceeded)
+ */
+public class LoadGenerator {
+
+  public static void main(String[] argv) throws Exception {
+    Map<String, String> options = parseOptions(argv);
+    String host = options.getOrDefault("host", "localhost");
+    int port = Integer.parseInt(options.getOrDefault("port", "4711"));
+    int sessionCount = Integer.parseInt(options.getOrDefault("sessions", "10"));
+    double rate = Double.parseDouble(options.getOrDefault("rate", "1000"));
+    int duration = Integer.parseInt(options.getOrDefault("duration", "30"));
+    String mix = options.getOrDefault("mix", "mixed");
+    int size = Integer.parseInt(options.getOrDefault("size", "16"));
+    String[] origin = options.getOrDefault("origin", "0,100,0").split(",");
+    double speed = Double.parseDouble(options.getOrDefault("speed", "1"));
+    double maxP99 = Double.parseDouble(options.getOrDefault("max-p99-ms", "-1"));
+    long maxFailed = Long.parseLong(options.getOrDefault("max-failed", "-1"));
+    Path replayFile = options.containsKey("replay") ? Path.of(options.get("replay")) : null;
+    TrafficRecording recording = null;
+    List<String> replay = null;
+    if (replayFile != null && TrafficRecording.isRecording(replayFile)) {
+      recording = TrafficRecording.read(replayFile);
+      replay = recording.entries.stream().map(entry -> entry.line).toList();
+      if (replay.isEmpty()) {
+        throw new IllegalArgumentException("No commands in " + replayFile);
+      }
+    } else if (replayFile != null) {
+      replay = Workload.readLines(replayFile);
+    }
+
+    LatencyHistogram latency = new LatencyHistogram();
+    LongAdder sent = new LongAdder();
+    LongAdder answered = new LongAdder();
+
+    System.out.println("Connecting " + sessionCount + " sessions to " + host + ":" + port + ", "
+        + (replay != null ? "replaying " + replayFile : mix + " mix")
+        + (recording != null && speed > 0 ? " at " + speed + "x the recorded speed" : " at " + rate + " commands/s"));
+
+    List<LoadSession> sessions = new ArrayList<>();
+    for (int i = 0; i < sessionCount; i++) {
+      Workload workload = recording != null && speed > 0 ? Workload.recording(recording, speed)
+          : replay != null ? Workload.replay(replay)
+          : Workload.synthetic(mix, Integer.parseInt(origin[0]), Integer.parseInt(origin[1]),
+              Integer.parseInt(origin[2]), size);
+      LoadSession session = new LoadSession(workload, i, rate / sessionCount, latency, sent, answered);
+      session.start(host, port);
+      sessions.add(session);
+    }
+
+    long start = System.nanoTime();
+    long lastSent = 0;
+    long lastAnswered = 0;
+    for (int second = 1; second <= duration; second++) {
+      Thread.sleep(Math.max(0, start + second * 1_000_000_000L - System.nanoTime()) / 1_000_000);
+      long nowSent = sent.sum();
+      long nowAnswered = answered.sum();
+      System.out.printf("%3ds: %6d sent/s, %6d answered/s, p99 %s%n", second, nowSent - lastSent,
+          nowAnswered - lastAnswered, millis(latency.getPercentile(0.99)));
+      lastSent = nowSent;
+      lastAnswered = nowAnswered;
+    }
+
+    for (LoadSession session : sessions) {
+      session.stop();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    int unanswered = sessions.stream().mapToInt(LoadSession::getUnanswered).sum();
+    long failed = sessions.stream().mapToLong(LoadSession::getFailed).sum();
+    long unexpected = sessions.stream().mapToLong(LoadSession::getUnexpected).sum();
+
+    System.out.println();
+    System.out.printf("Sent %d commands in %.1f s (%.0f/s), %d queries answered, %d failed, %d unanswered%n",
+        sent.sum(), seconds, sent.sum() / seconds, answered.sum(), failed, unanswered);
+    if (unexpected > 0) {
+      System.out.printf("WARNING: %d unexpected lines, answers were matched to the wrong queries "
+          + "and the latencies are not reliable%n", unexpected);
+    }
+    System.out.printf("Latency p50 %s, p90 %s, p99 %s, p99.9 %s, max %s%n", millis(latency.getPercentile(0.5)),
+        millis(latency.getPercentile(0.9)), millis(latency.getPercentile(0.99)),
+        millis(latency.getPercentile(0.999)), millis(latency.getMax()));
+
+    // the thresholds turn a run into a pass or fail, e.g. for runLoadTest
+    List<String> exceeded = new ArrayList<>();
+    if (maxP99 >= 0 && latency.getPercentile(0.99) / 1e6 > maxP99) {
+      exceeded.add("p99 latency above " + maxP99 + " ms");
+    }
+    if (maxFailed >= 0 && failed + unanswered > maxFailed) {
+      exceeded.add((failed + unanswered) + " failed or unanswered queries, at most " + maxFailed + " allowed");
+    }
+    if ((maxP99 >= 0 || maxFailed >= 0) && unexpected > 0) {
+      exceeded.add(unexpected + " unexpected lines");
+    }
+    if (!exceeded.isEmpty()) {
+      System.out.println("FAILED: " + String.join(", ", exceeded));
+      System.exit(1);
+    }
+  }
+
+  private static Map<String, String> parseOptions(String[] argv) {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i + 1 < argv.length; i += 2) {
+      if (!argv[i].startsWith("--")) {
+        throw new IllegalArgumentException("Expected an option instead of " + argv[i]);
+      }
+      options.put(argv[i].substring(2), argv[i + 1]);
+    }
+    return options;
+  }
+
+  private static String millis(long nanos) {
+    return String.format("%.2f ms", nanos / 1e6);
+  }
+
+}
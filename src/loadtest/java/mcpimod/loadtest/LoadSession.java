@@ -0,0 +1,186 @@
+package mcpimod.loadtest;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import mcpimod.metrics.LatencyHistogram;
+
+/**
+ * One connection sending commands at a fixed rate. The time from sending
+ * a query to reading its answer is recorded as latency. Commands are sent
+ * on schedule whether or not the answers came back (open loop), so a slow
+ * server shows up as growing latency instead of a lower send rate. The
+ * latency is measured from the time a query was scheduled, so queries held
+ * up by a blocked socket count the time they waited (no coordinated
+ * omission).
+ */
+public class LoadSession {
+
+  private static final long DRAIN_NANOS = 5_000_000_000L;
+
+  private final Socket socket = new Socket();
+  private final Workload workload;
+  private final Random random;
+  private final long intervalNanos;
+
+  private final LatencyHistogram latency;
+  private final LongAdder sent;
+  private final LongAdder answered;
+
+  /** Send times of the queries still waiting for an answer, answers come in order */
+  private final ConcurrentLinkedQueue<Pending> pending = new ConcurrentLinkedQueue<>();
+
+  /** Queries answered with "Fail" */
+  private final LongAdder failed = new LongAdder();
+  /**
+   * Lines received while no query was waiting, after one of them the
+   * answers can't be matched to their queries anymore
+   */
+  private final LongAdder unexpected = new LongAdder();
+
+  private volatile boolean running = true;
+  private Thread writer;
+  private Thread reader;
+
+  private static class Pending {
+    private final long sentAt;
+    private final boolean multiLine;
+    /** Set by the reader thread once a multi line answer contained "Fail" */
+    private boolean gotFail = false;
+
+    private Pending(long sentAt, boolean multiLine) {
+      this.sentAt = sentAt;
+      this.multiLine = multiLine;
+    }
+  }
+
+  public LoadSession(Workload workload, long seed, double rate, LatencyHistogram latency, LongAdder sent,
+      LongAdder answered) {
+    this.workload = workload;
+    this.random = new Random(seed);
+    this.intervalNanos = (long) (1e9 / rate);
+    this.latency = latency;
+    this.sent = sent;
+    this.answered = answered;
+  }
+
+  public void start(String host, int port) throws IOException {
+    socket.connect(new InetSocketAddress(host, port), 5000);
+    socket.setTcpNoDelay(true);
+    BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+    writer = new Thread(() -> write(out), "load-writer");
+    reader = new Thread(() -> read(in), "load-reader");
+    writer.start();
+    reader.start();
+  }
+
+  private void write(BufferedWriter out) {
+    long next = System.nanoTime();
+    try {
+      while (running) {
+        long now = System.nanoTime();
+        if (now < next) {
+          LockSupport.parkNanos(next - now);
+          continue;
+        }
+        // catch up on missed sends without waiting in between
+        while (next <= now && running) {
+          String line = workload.next(random);
+          if (Workload.expectsResponse(line)) {
+            // the scheduled time, a query delayed by the socket still counts its wait
+            pending.add(new Pending(next, Workload.isMultiLine(line)));
+          }
+          out.write(line);
+          out.write('\n');
+          sent.increment();
+          next += workload.delayNanos(intervalNanos);
+        }
+        out.flush();
+      }
+    } catch (IOException e) {
+      if (running) {
+        System.err.println("Connection lost while sending: " + e.getMessage());
+        running = false;
+      }
+    }
+  }
+
+  private void read(BufferedReader in) {
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        Pending query = pending.peek();
+        if (query == null) {
+          // an answer nobody waits for: the load tool doesn't know the command or the server
+          // sent a line for a command without an answer, so the following answers are shifted
+          if (unexpected.sum() == 0) {
+            System.err.println("Unexpected line from the server, the answers are out of sync: " + line);
+          }
+          unexpected.increment();
+          continue;
+        }
+        if (query.multiLine && !line.equals("end")) {
+          // a failed multi line answer is "Fail" followed by "end"
+          if (line.equals("Fail")) {
+            query.gotFail = true;
+          }
+          continue;
+        }
+        pending.poll();
+        if (line.equals("Fail") || query.gotFail) {
+          failed.increment();
+          continue;
+        }
+        latency.record(System.nanoTime() - query.sentAt);
+        answered.increment();
+      }
+    } catch (IOException e) {
+      if (running) {
+        System.err.println("Connection lost while reading: " + e.getMessage());
+      }
+    }
+    running = false;
+  }
+
+  /** Queries which never got an answer */
+  public int getUnanswered() {
+    return pending.size();
+  }
+
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  public long getUnexpected() {
+    return unexpected.sum();
+  }
+
+  public void stop() throws InterruptedException {
+    running = false;
+    writer.join();
+    // give the answers still on the way some time to arrive
+    long deadline = System.nanoTime() + DRAIN_NANOS;
+    while (!pending.isEmpty() && reader.isAlive() && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // closing anyway
+    }
+    reader.join();
+  }
+
+}
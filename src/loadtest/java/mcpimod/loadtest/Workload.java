@@ -0,0 +1,124 @@
+package mcpimod.loadtest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import mcpimod.utils.CommandLine;
+import mcpimod.utils.TrafficRecording;
+
+/** Produces the commands a load session sends */
+public interface Workload {
+
+  String next(Random random);
+
+  /** Nanoseconds from the command just returned by next to the following one */
+  default long delayNanos(long intervalNanos) {
+    return intervalNanos;
+  }
+
+  /** A synthetic mix around the origin: "setblock", "getblocks", "events" or "mixed" */
+  static Workload synthetic(String mix, int originX, int originY, int originZ, int size) {
+    Workload setBlock = random -> "world.setBlock(" + (originX + random.nextInt(64)) + ","
+        + (originY + random.nextInt(16)) + "," + (originZ + random.nextInt(64)) + "," + (1 + random.nextInt(5)) + ")";
+    Workload getBlocks = random -> {
+      int x = originX + random.nextInt(64);
+      int z = originZ + random.nextInt(64);
+      return "world.getBlocks(" + x + "," + originY + "," + z + "," + (x + size - 1) + "," + (originY + size - 1)
+          + "," + (z + size - 1) + ")";
+    };
+    Workload events = random -> random.nextBoolean() ? "events.block.hits()" : "events.chat.posts()";
+    Workload getBlock = random -> "world.getBlock(" + (originX + random.nextInt(64)) + ","
+        + (originY + random.nextInt(16)) + "," + (originZ + random.nextInt(64)) + ")";
+
+    return switch (mix) {
+      case "setblock" -> setBlock;
+      case "getblocks" -> getBlocks;
+      case "events" -> events;
+      case "mixed" -> random -> {
+        int roll = random.nextInt(100);
+        if (roll < 70) {
+          return setBlock.next(random);
+        } else if (roll < 80) {
+          return getBlock.next(random);
+        } else if (roll < 90) {
+          return events.next(random);
+        }
+        return getBlocks.next(random);
+      };
+      default -> throw new IllegalArgumentException("Unknown mix: " + mix);
+    };
+  }
+
+  static List<String> readLines(Path file) throws IOException {
+    List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8).stream()
+        .filter(line -> !line.isBlank())
+        .toList();
+    if (lines.isEmpty()) {
+      throw new IllegalArgumentException("No commands in " + file);
+    }
+    return lines;
+  }
+
+  /** Replays the lines in order, over and over */
+  static Workload replay(List<String> lines) {
+    return new Workload() {
+      private int next = 0;
+
+      @Override
+      public String next(Random random) {
+        String line = lines.get(next);
+        next = (next + 1) % lines.size();
+        return line;
+      }
+    };
+  }
+
+  /**
+   * Replays a session recording over and over, keeping the recorded gaps
+   * between the commands divided by speed. The gap between the last and
+   * the first command is the interval of the target rate.
+   */
+  static Workload recording(TrafficRecording recording, double speed) {
+    List<TrafficRecording.Entry> entries = recording.entries;
+    if (entries.isEmpty()) {
+      throw new IllegalArgumentException("No commands in the recording");
+    }
+    return new Workload() {
+      private int current = -1;
+
+      @Override
+      public String next(Random random) {
+        current = (current + 1) % entries.size();
+        return entries.get(current).line;
+      }
+
+      @Override
+      public long delayNanos(long intervalNanos) {
+        if (current + 1 >= entries.size()) {
+          return intervalNanos;
+        }
+        return (long) ((entries.get(current + 1).nanos - entries.get(current).nanos) / speed);
+      }
+    };
+  }
+
+  /** Whether the server answers the command, with one line or with lines up to "end" */
+  static boolean expectsResponse(String line) {
+    if (line.startsWith("@")) {
+      line = line.substring(line.indexOf(' ') + 1);
+    }
+    return CommandLine.expectsResponse(line);
+  }
+
+  static boolean isMultiLine(String line) {
+    if (line.startsWith("@")) {
+      line = line.substring(line.indexOf(' ') + 1);
+    }
+    return CommandLine.isMultiLine(line);
+  }
+
+}
@@ -0,0 +1,147 @@
+/* Copyright 2024 UserNameBlank
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mcpimod;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.StringArgumentType;
+
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+
+import mcpimod.core.RateLimiter;
+import mcpimod.metrics.CommandMetrics;
+import mcpimod.metrics.LatencyHistogram;
+import mcpimod.metrics.TickProfiler;
+import mcpimod.utils.ChunkPreloader;
+import mcpimod.utils.TrafficRecorder;
+import net.minecraft.server.command.CommandManager;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.Text;
+
+/** The /mcpi command for operators */
+public class McpiCommand {
+
+  /** Command types listed by /mcpi stats */
+  private static final int MAX_LISTED = 15;
+
+  /** Sessions and command types listed by /mcpi profile */
+  private static final int MAX_OFFENDERS = 5;
+
+  public static void register(CommandDispatcher<ServerCommandSource> dispatcher, McpiMod mod) {
+    dispatcher.register(CommandManager.literal("mcpi")
+        .requires(source -> source.hasPermissionLevel(2))
+        .then(CommandManager.literal("stats").executes(context -> stats(context.getSource(), mod)))
+        .then(CommandManager.literal("profile").executes(context -> profile(context.getSource())))
+        .then(CommandManager.literal("record")
+            .then(CommandManager.literal("start")
+                .then(CommandManager.argument("address", StringArgumentType.string())
+                    .executes(context -> record(context.getSource(), mod,
+                        StringArgumentType.getString(context, "address"), true))))
+            .then(CommandManager.literal("stop")
+                .then(CommandManager.argument("address", StringArgumentType.string())
+                    .executes(context -> record(context.getSource(), mod,
+                        StringArgumentType.getString(context, "address"), false))))));
+  }
+
+  /** Starts or stops recording the sessions from an address, including the ones opened later */
+  private static int record(ServerCommandSource source, McpiMod mod, String address, boolean start) {
+    int count = 0;
+    if (start) {
+      TrafficRecorder.TARGETS.add(address);
+    } else {
+      TrafficRecorder.TARGETS.remove(address);
+    }
+    for (RemoteSession session : mod.sessions) {
+      if (session.getHostAddress().equals(address)
+          && (start ? session.startRecording() : session.stopRecording())) {
+        count++;
+      }
+    }
+    feedback(source, (start ? "Started" : "Stopped") + " recording " + count + " sessions from " + address
+        + (start ? ", new sessions from it are recorded as well" : ""));
+    return count;
+  }
+
+  private static int stats(ServerCommandSource source, McpiMod mod) {
+    List<Map.Entry<String, CommandMetrics.CommandStats>> commands = CommandMetrics.getCommands().entrySet()
+        .stream()
+        .sorted(Comparator.comparingLong(
+            (Map.Entry<String, CommandMetrics.CommandStats> e) -> e.getValue().execution.getSum()).reversed())
+        .limit(MAX_LISTED)
+        .toList();
+
+    feedback(source, "Commands by total time (count, p50 / p99 / max, queue wait p99):");
+    for (Map.Entry<String, CommandMetrics.CommandStats> entry : commands) {
+      LatencyHistogram execution = entry.getValue().execution;
+      feedback(source, entry.getKey() + ": " + execution.getCount() + ", "
+          + CommandMetrics.formatMillis(execution.getPercentile(0.5)) + " / "
+          + CommandMetrics.formatMillis(execution.getPercentile(0.99)) + " / "
+          + CommandMetrics.formatMillis(execution.getMax()) + ", "
+          + CommandMetrics.formatMillis(entry.getValue().queueWait.getPercentile(0.99)));
+    }
+
+    feedback(source, "Sessions (received / sent):");
+    for (RemoteSession session : mod.sessions) {
+      feedback(source, session.getAddress() + ": " + session.getBytesIn() / 1024 + " KB / "
+          + session.getBytesOut() / 1024 + " KB");
+    }
+
+    feedback(source, "Ticks at the command limit: " + CommandMetrics.LIMITED_TICKS.sum());
+    feedback(source, "Rate limits: " + RateLimiter.DELAYED_TICKS.sum() + " session ticks delayed, "
+        + RateLimiter.REJECTED.sum() + " commands rejected");
+    feedback(source, "Connections: " + ServerListenerThread.REJECTED_CONNECTIONS.sum() + " rejected, "
+        + SessionReaper.IDLE_DISCONNECTS.sum() + " idle sessions disconnected");
+    feedback(source, "Chunk preloading: " + ChunkPreloader.getStats());
+    return commands.size();
+  }
+
+  private static int profile(ServerCommandSource source) {
+    TickProfiler.Summary summary = TickProfiler.summarize(MAX_OFFENDERS);
+    if (summary.ticks == 0) {
+      feedback(source, "No ticks recorded yet");
+      return 0;
+    }
+
+    feedback(source, String.format("Remote sessions used %.1f%% of the last %d ticks (%s per tick)",
+        summary.getSessionPercent(), summary.ticks, CommandMetrics.formatMillis(summary.sessionNanos / summary.ticks)));
+
+    feedback(source, "Top sessions:");
+    for (Object2LongMap.Entry<String> entry : summary.topSessions) {
+      feedback(source, offender(entry, summary));
+    }
+    feedback(source, "Top commands:");
+    for (Object2LongMap.Entry<String> entry : summary.topCommands) {
+      feedback(source, offender(entry, summary));
+    }
+    return summary.ticks;
+  }
+
+  private static String offender(Object2LongMap.Entry<String> entry, TickProfiler.Summary summary) {
+    return String.format("%s: %s per tick, %.1f%% of tick time", entry.getKey(),
+        CommandMetrics.formatMillis(entry.getLongValue() / summary.ticks),
+        100.0 * entry.getLongValue() / summary.tickNanos);
+  }
+
+  private static void feedback(ServerCommandSource source, String line) {
+    source.sendFeedback(() -> Text.literal(line), false);
+  }
+
+}
@@ -18,22 +18,37 @@
 package mcpimod;
 
 import java.net.InetSocketAddress;
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import mcpimod.core.RateLimiter;
+import mcpimod.core.SessionThreads;
+import mcpimod.metrics.MetricsServer;
+import mcpimod.metrics.SlowCommandLog;
+import mcpimod.metrics.TickProfiler;
+import mcpimod.tasks.FloodFillTask;
 import mcpimod.utils.BlockEvent;
+import mcpimod.utils.BlockIdCache;
+import mcpimod.utils.ChangeTracker;
 import mcpimod.utils.ChatEvent;
+import mcpimod.utils.ChunkPreloader;
+import mcpimod.utils.PlayerRegistry;
+import mcpimod.utils.ResponseWriter;
+import mcpimod.utils.TrafficRecorder;
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.fabricmc.fabric.api.entity.event.v1.ServerPlayerEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.fabricmc.fabric.api.event.player.AttackBlockCallback;
 import net.fabricmc.fabric.api.gamerule.v1.GameRuleFactory;
 import net.fabricmc.fabric.api.gamerule.v1.GameRuleRegistry;
 import net.fabricmc.fabric.api.message.v1.ServerMessageEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 import net.minecraft.item.SwordItem;
 import net.minecraft.util.ActionResult;
 import net.minecraft.world.GameRules;
@@ -47,10 +62,87 @@ public class McpiMod implements ModInitializer {
       .register("mcpiMaxCommandsPerTick", Category.UPDATES,
           GameRuleFactory.createIntRule(9000, 0, Integer.MAX_VALUE, RemoteSession::setMaxCommandsPerTick));
 
+  public static final GameRules.Key<GameRules.IntRule> MAX_BLOCKS_PER_TICK = GameRuleRegistry
+      .register("mcpiMaxBlocksPerTick", Category.UPDATES,
+          GameRuleFactory.createIntRule(65536, 1, Integer.MAX_VALUE, RemoteSession::setMaxBlocksPerTick));
+
+  public static final GameRules.Key<GameRules.IntRule> MAX_FLOOD_FILL_BLOCKS = GameRuleRegistry
+      .register("mcpiMaxFloodFillBlocks", Category.MISC,
+          GameRuleFactory.createIntRule(1_000_000, 0, Integer.MAX_VALUE, FloodFillTask::setMaxBlocks));
+
   public static final GameRules.Key<GameRules.BooleanRule> ONLY_COUNT_SWORD_HITS = GameRuleRegistry
       .register("mcpiOnlyCountSwordHits", Category.MISC, GameRuleFactory.createBooleanRule(true));
 
-  public ServerListenerThread serverThread;
+  public static final GameRules.Key<GameRules.IntRule> CHUNK_LOAD_TIMEOUT = GameRuleRegistry
+      .register("mcpiChunkLoadTimeout", Category.UPDATES,
+          GameRuleFactory.createIntRule(200, 0, Integer.MAX_VALUE, ChunkPreloader::setTimeoutTicks));
+
+  public static final GameRules.Key<GameRules.IntRule> BLOCK_CACHE_SIZE_MB = GameRuleRegistry
+      .register("mcpiBlockCacheSizeMb", Category.MISC,
+          GameRuleFactory.createIntRule(64, 0, 4096, BlockIdCache::setMaxSizeMb));
+
+  public static final GameRules.Key<GameRules.IntRule> MAX_CHANGED_SECTIONS = GameRuleRegistry
+      .register("mcpiMaxChangedSections", Category.MISC,
+          GameRuleFactory.createIntRule(4096, 1, Integer.MAX_VALUE, ChangeTracker::setMaxSections));
+
+  public static final GameRules.Key<GameRules.IntRule> DECIMAL_PLACES = GameRuleRegistry
+      .register("mcpiDecimalPlaces", Category.MISC,
+          GameRuleFactory.createIntRule(-1, -1, 9, (server, rule) -> ResponseWriter.DECIMAL_PLACES = rule.get()));
+
+  public static final GameRules.Key<GameRules.IntRule> METRICS_PORT = GameRuleRegistry
+      .register("mcpiMetricsPort", Category.MISC,
+          GameRuleFactory.createIntRule(0, 0, 65535, MetricsServer::setPort));
+
+  public static final GameRules.Key<GameRules.IntRule> SLOW_COMMAND_MS = GameRuleRegistry
+      .register("mcpiSlowCommandMs", Category.MISC,
+          GameRuleFactory.createIntRule(50, 0, Integer.MAX_VALUE, SlowCommandLog::setThresholdMs));
+
+  public static final GameRules.Key<GameRules.BooleanRule> RECORD_SESSIONS = GameRuleRegistry
+      .register("mcpiRecordSessions", Category.MISC,
+          GameRuleFactory.createBooleanRule(false, TrafficRecorder::setEnabled));
+
+  public static final GameRules.Key<GameRules.IntRule> RECORDING_MAX_MB = GameRuleRegistry
+      .register("mcpiRecordingMaxMb", Category.MISC,
+          GameRuleFactory.createIntRule(64, 0, Integer.MAX_VALUE, TrafficRecorder::setMaxSizeMb));
+
+  public static final GameRules.Key<GameRules.BooleanRule> VIRTUAL_THREADS = GameRuleRegistry
+      .register("mcpiVirtualThreads", Category.MISC,
+          GameRuleFactory.createBooleanRule(true, (server, rule) -> SessionThreads.USE_VIRTUAL = rule.get()));
+
+  // rate limits of each session, see RateLimiter
+  public static final GameRules.Key<GameRules.IntRule> COMMANDS_PER_SECOND = GameRuleRegistry
+      .register("mcpiCommandsPerSecond", Category.MISC, GameRuleFactory.createIntRule(0, 0, Integer.MAX_VALUE,
+          (server, rule) -> RateLimiter.COMMANDS_PER_SECOND = rule.get()));
+
+  public static final GameRules.Key<GameRules.IntRule> BLOCKS_PER_SECOND = GameRuleRegistry
+      .register("mcpiBlocksPerSecond", Category.MISC, GameRuleFactory.createIntRule(0, 0, Integer.MAX_VALUE,
+          (server, rule) -> RateLimiter.BLOCKS_PER_SECOND = rule.get()));
+
+  public static final GameRules.Key<GameRules.IntRule> BYTES_PER_SECOND = GameRuleRegistry
+      .register("mcpiBytesPerSecond", Category.MISC, GameRuleFactory.createIntRule(0, 0, Integer.MAX_VALUE,
+          (server, rule) -> RateLimiter.BYTES_PER_SECOND = rule.get()));
+
+  public static final GameRules.Key<GameRules.IntRule> ADDRESS_LIMIT_FACTOR = GameRuleRegistry
+      .register("mcpiAddressLimitFactor", Category.MISC, GameRuleFactory.createIntRule(4, 0, 1000,
+          (server, rule) -> RateLimiter.ADDRESS_FACTOR = rule.get()));
+
+  public static final GameRules.Key<GameRules.BooleanRule> REJECT_OVER_LIMIT = GameRuleRegistry
+      .register("mcpiRejectOverLimit", Category.MISC,
+          GameRuleFactory.createBooleanRule(false, (server, rule) -> RateLimiter.REJECT = rule.get()));
+
+  public static final GameRules.Key<GameRules.IntRule> MAX_SESSIONS = GameRuleRegistry
+      .register("mcpiMaxSessions", Category.MISC,
+          GameRuleFactory.createIntRule(0, 0, Integer.MAX_VALUE, ServerListenerThread::setMaxSessions));
+
+  // only read when the listener starts
+  public static final GameRules.Key<GameRules.IntRule> ACCEPT_BACKLOG = GameRuleRegistry
+      .register("mcpiAcceptBacklog", Category.MISC, GameRuleFactory.createIntRule(50, 1, 65535));
+
+  public static final GameRules.Key<GameRules.IntRule> IDLE_TIMEOUT = GameRuleRegistry
+      .register("mcpiIdleTimeout", Category.MISC,
+          GameRuleFactory.createIntRule(0, 0, Integer.MAX_VALUE, SessionReaper::setIdleTimeout));
+
+  public volatile ServerListenerThread serverThread;
 
   public List<RemoteSession> sessions;
 
@@ -58,38 +150,119 @@ public class McpiMod implements ModInitializer {
   public void onInitialize() {
     LOGGER.info("Initializing McpiMod");
 
-    sessions = new ArrayList<>();
-
-    try {
-      serverThread = new ServerListenerThread(this, new InetSocketAddress(4711));
-      new Thread(serverThread).start();
-      LOGGER.info("ThreadListener started");
-    } catch (Exception e) {
-      e.printStackTrace();
-      LOGGER.warn("*ERROR* failed to start ThreadListener");
-      LOGGER.warn("McpiMod Initialization failed.");
-      return;
-    }
+    sessions = new CopyOnWriteArrayList<>();
+    MetricsServer.init(() -> sessions);
 
     // sync the static variable with the game rule
     ServerLifecycleEvents.SERVER_STARTED.register(server -> {
       RemoteSession.MAX_COMMANDS_PER_TICK = server.getGameRules().getInt(MAX_COMMANDS_PER_TICK);
+      RemoteSession.MAX_BLOCKS_PER_TICK = server.getGameRules().getInt(MAX_BLOCKS_PER_TICK);
+      BlockIdCache.setMaxSizeMb(server.getGameRules().getInt(BLOCK_CACHE_SIZE_MB));
+      ChangeTracker.MAX_SECTIONS = server.getGameRules().getInt(MAX_CHANGED_SECTIONS);
+      FloodFillTask.MAX_BLOCKS = server.getGameRules().getInt(MAX_FLOOD_FILL_BLOCKS);
+      ChunkPreloader.TIMEOUT_TICKS = server.getGameRules().getInt(CHUNK_LOAD_TIMEOUT);
+      ResponseWriter.DECIMAL_PLACES = server.getGameRules().getInt(DECIMAL_PLACES);
+      SlowCommandLog.THRESHOLD_MS = server.getGameRules().getInt(SLOW_COMMAND_MS);
+      TrafficRecorder.ENABLED = server.getGameRules().getBoolean(RECORD_SESSIONS);
+      TrafficRecorder.MAX_SIZE_MB = server.getGameRules().getInt(RECORDING_MAX_MB);
+      SessionThreads.USE_VIRTUAL = server.getGameRules().getBoolean(VIRTUAL_THREADS);
+      LOGGER.info("Sessions use " + SessionThreads.getMode() + " threads");
+      RateLimiter.COMMANDS_PER_SECOND = server.getGameRules().getInt(COMMANDS_PER_SECOND);
+      RateLimiter.BLOCKS_PER_SECOND = server.getGameRules().getInt(BLOCKS_PER_SECOND);
+      RateLimiter.BYTES_PER_SECOND = server.getGameRules().getInt(BYTES_PER_SECOND);
+      RateLimiter.ADDRESS_FACTOR = server.getGameRules().getInt(ADDRESS_LIMIT_FACTOR);
+      RateLimiter.REJECT = server.getGameRules().getBoolean(REJECT_OVER_LIMIT);
+      MetricsServer.start(server.getGameRules().getInt(METRICS_PORT));
+      ServerListenerThread.MAX_SESSIONS = server.getGameRules().getInt(MAX_SESSIONS);
+      ServerListenerThread.ACCEPT_BACKLOG = server.getGameRules().getInt(ACCEPT_BACKLOG);
+      SessionReaper.IDLE_TIMEOUT_SECONDS = server.getGameRules().getInt(IDLE_TIMEOUT);
+
+      // connections are accepted while a server runs, once the game rules can be read
+      startListener();
+      SessionReaper.start(() -> sessions);
     });
 
-    // Registering a tick event to execute the commands from the remote sessions
+    ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
+      MetricsServer.stop();
+
+      if (serverThread != null) {
+        serverThread.stop();
+        serverThread = null;
+      }
+      SessionReaper.stop();
+      // closed right here, the daemon reaper thread could still be closing them when the JVM exits
+      for (RemoteSession s : sessions) {
+        s.disconnect();
+      }
+      for (RemoteSession s : sessions) {
+        try {
+          s.finish(server);
+        } catch (Exception e) {
+          LOGGER.warn("*ERROR* ending the build mode of " + s.getAddress());
+          e.printStackTrace();
+        }
+        s.close();
+      }
+      sessions.clear();
+    });
+
+    ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+      PlayerRegistry.clear();
+      BlockIdCache.clear();
+      ChangeTracker.clear();
+    });
+
+    CommandRegistrationCallback.EVENT.register((dispatcher, _registryAccess, _environment) -> {
+      McpiCommand.register(dispatcher, this);
+    });
+
+    // unloaded chunks may be changed on disk before they come back
+    ServerChunkEvents.CHUNK_UNLOAD.register((world, chunk) -> {
+      BlockIdCache.invalidate(world, chunk);
+    });
+
+    // Registering a tick event to remove closed sessions and reset the command budgets
     ServerTickEvents.START_SERVER_TICK.register(server -> {
-      Iterator<RemoteSession> iter = sessions.iterator();
-      while (iter.hasNext()) {
-        RemoteSession s = iter.next();
+      TickProfiler.startTick();
+      TrafficRecorder.currentTick = server.getTicks();
+      sessions.removeIf(s -> {
         if (s.pendingRemoval) {
-          s.close();
-          iter.remove();
-        } else {
-          s.tick(server.getOverworld());
+          // closing waits for the socket threads, which must not hold up the tick
+          SessionReaper.close(s);
+          return true;
         }
+        s.startTick();
+        return false;
+      });
+    });
+
+    // Registering a tick event to execute the commands from the remote sessions
+    // in the tick phase of the world they target
+    ServerTickEvents.START_WORLD_TICK.register(world -> {
+      for (RemoteSession s : sessions) {
+        long start = System.nanoTime();
+        s.tick(world);
+        TickProfiler.recordSession(s.getAddress(), System.nanoTime() - start);
       }
     });
 
+    ServerTickEvents.END_SERVER_TICK.register(server -> {
+      TickProfiler.endTick();
+    });
+
+    // keep the player index up to date
+    ServerPlayConnectionEvents.JOIN.register((handler, _sender, _server) -> {
+      PlayerRegistry.add(handler.getPlayer());
+    });
+
+    ServerPlayConnectionEvents.DISCONNECT.register((handler, _server) -> {
+      PlayerRegistry.remove(handler.getPlayer());
+    });
+
+    ServerPlayerEvents.AFTER_RESPAWN.register((oldPlayer, newPlayer, _alive) -> {
+      PlayerRegistry.replace(oldPlayer, newPlayer);
+    });
+
     AttackBlockCallback.EVENT.register((player, world, hand, pos, direction) -> {
       if (!world.isClient && !player.isSpectator()) {
         if (!world.getGameRules().getBoolean(ONLY_COUNT_SWORD_HITS)
@@ -106,9 +279,23 @@ public class McpiMod implements ModInitializer {
     });
   }
 
+  private void startListener() {
+    try {
+      serverThread = new ServerListenerThread(this, new InetSocketAddress(4711));
+      new Thread(serverThread).start();
+      LOGGER.info("ThreadListener started");
+    } catch (Exception e) {
+      e.printStackTrace();
+      LOGGER.warn("*ERROR* failed to start ThreadListener");
+    }
+  }
+
   public void handleConnection(RemoteSession session) {
-    synchronized (sessions) {
-      sessions.add(session);
+    sessions.add(session);
+    // accepted while the server was stopping
+    if (serverThread == null) {
+      sessions.remove(session);
+      SessionReaper.close(session);
     }
   }
 }
@@ -25,204 +25,820 @@
 
 package mcpimod;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.net.Socket;
-import java.util.ArrayDeque;
+import java.net.SocketOption;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Stream;
-
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import jdk.net.ExtendedSocketOptions;
+import mcpimod.core.BlockCommands;
+import mcpimod.core.CommandQueue;
+import mcpimod.core.RateLimiter;
+import mcpimod.core.ResponseQueue;
+import mcpimod.core.SessionThreads;
+import mcpimod.core.SliceSnapshot;
+import mcpimod.core.ThrottledInputStream;
+import mcpimod.metrics.CommandMetrics;
+import mcpimod.metrics.CountingInputStream;
+import mcpimod.metrics.SlowCommandLog;
+import mcpimod.metrics.TickProfiler;
+import mcpimod.tasks.BudgetedTask;
+import mcpimod.tasks.ExportTask;
+import mcpimod.tasks.FloodFillTask;
+import mcpimod.tasks.RegionImport;
+import mcpimod.tasks.ReplaceTask;
+import mcpimod.tasks.ShapeTask;
 import mcpimod.utils.BlockEvent;
+import mcpimod.utils.BlockIdStream;
+import mcpimod.utils.BlockIds;
+import mcpimod.utils.BuildMode;
+import mcpimod.utils.ChangeTracker;
 import mcpimod.utils.ChatEvent;
+import mcpimod.utils.ChunkPreloader;
+import mcpimod.utils.CommandLine;
+import mcpimod.utils.EventQueue;
+import mcpimod.utils.PlayerRegistry;
+import mcpimod.utils.RayCast;
+import mcpimod.utils.RegionCodec;
+import mcpimod.utils.ResponseWriter;
+import mcpimod.utils.ServerWorldAccess;
+import mcpimod.utils.Shapes;
+import mcpimod.utils.TrafficRecorder;
+import mcpimod.utils.WorldSnapshot;
 import net.minecraft.block.BlockState;
-import net.minecraft.block.Blocks;
-import net.minecraft.block.ChestBlock;
-import net.minecraft.block.FurnaceBlock;
-import net.minecraft.block.LadderBlock;
-import net.minecraft.block.RedstoneOreBlock;
-import net.minecraft.block.SlabBlock;
-import net.minecraft.block.StairsBlock;
-import net.minecraft.block.TntBlock;
-import net.minecraft.block.WallTorchBlock;
-import net.minecraft.block.enums.BlockHalf;
-import net.minecraft.block.enums.SlabType;
 import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityType;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.registry.RegistryKeys;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.text.Text;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.TypeFilter;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.Direction;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.GameRules;
+import net.minecraft.world.World;
 
 public class RemoteSession {
 
   private Socket socket;
+  private String address;
 
   private BufferedReader in;
-  private BufferedWriter out;
+  private BufferedOutputStream out;
 
   private Thread inThread;
   private Thread outThread;
 
-  private ArrayDeque<String> inQueue = new ArrayDeque<>();
-  private ArrayDeque<String> outQueue = new ArrayDeque<>();
+  private final CommandQueue commands = new CommandQueue();
+  private final ResponseQueue responses = new ResponseQueue(QUERY_EXECUTOR, this::reportResponseError);
+
+  /** Formats the responses of the commands executed on the server thread */
+  private final ResponseWriter response = new ResponseWriter();
+
+  private final AtomicLong bytesIn = new AtomicLong();
+  private final AtomicLong bytesOut = new AtomicLong();
 
-  private boolean running = true;
+  /** Records the received lines, see {@link TrafficRecorder#shouldRecord} and /mcpi record */
+  private volatile TrafficRecorder recorder = null;
+
+  private volatile boolean running = true;
+  /** Guarded by this, like the recorder start and stop */
   private boolean closed = false;
 
+  /** When the last line was received (System.nanoTime), see {@link SessionReaper} */
+  private volatile long lastReceived = System.nanoTime();
+
+  /** The rate limits of the session, see {@link RateLimiter} */
+  private final RateLimiter limiter;
+  /** Blocks written by the current command, charged to the limiter afterwards */
+  private int writtenBlocks = 0;
+
   public boolean pendingRemoval = false;
 
-  public static LinkedList<BlockEvent> BLOCK_EVENTS = new LinkedList<>();
-  public static LinkedList<ChatEvent> CHAT_EVENTS = new LinkedList<>();
+  /** The dimension commands without an explicit dimension are executed in */
+  private RegistryKey<World> dimension = World.OVERWORLD;
+
+  /** Writes skip neighbor updates and defer the light updates, see {@link BuildMode} */
+  private boolean buildMode = false;
+  private Map<RegistryKey<World>, LongOpenHashSet> deferredLight = new HashMap<>();
+
+  /**
+   * Work spread over several ticks, see {@link BudgetedTask}. Volatile as
+   * the reaper thread checks it in {@link #isIdle}.
+   */
+  private volatile BudgetedTask task = null;
+  private RegistryKey<World> taskDimension = null;
+  private int blockBudget = 0;
+
+  /** The player the player commands refer to, null for the first player */
+  private UUID boundPlayer = null;
+
+  /** Reused by the batched entity commands */
+  private double[] batchBuffer = new double[256];
+
+  /** The world the block commands ran in last, see {@link #getWorldAccess} */
+  private ServerWorldAccess worldAccess = null;
+
+  /**
+   * Snapshots of streamed world.getBlocks responses, captured a slice per tick
+   * as the output thread reads them, see {@link SliceSnapshot}
+   */
+  private final ConcurrentLinkedQueue<SliceSnapshot> streamedSnapshots = new ConcurrentLinkedQueue<>();
+
+  /** The region currently received through world.importRegionData */
+  private RegionImport regionImport = null;
+
+  /** The queued command waiting for its chunks to load, see {@link #isReady} */
+  private String parkedMessage = null;
+  private LongArrayList parkedChunks = null;
+  private long parkedSince = -1;
+
+  public static EventQueue<BlockEvent> BLOCK_EVENTS = new EventQueue<>();
+  public static EventQueue<ChatEvent> CHAT_EVENTS = new EventQueue<>();
 
   public static int MAX_COMMANDS_PER_TICK = 9000;
 
+  /** Worker threads answering read only queries from world snapshots */
+  private static final ExecutorService QUERY_EXECUTOR = Executors.newFixedThreadPool(
+      Math.max(1, Runtime.getRuntime().availableProcessors() / 2), new QueryThreadFactory());
+
+  public static int MAX_BLOCKS_PER_TICK = 65536;
+
+  private static final int KEEP_ALIVE_IDLE_SECONDS = 30;
+  private static final int KEEP_ALIVE_INTERVAL_SECONDS = 10;
+  private static final int KEEP_ALIVE_PROBES = 3;
+
+  /** Upper limit for the entities returned by a single query */
+  public static final int MAX_ENTITY_RESULTS = 1000;
+
   public static void setMaxCommandsPerTick(MinecraftServer _server, GameRules.IntRule rule) {
     MAX_COMMANDS_PER_TICK = rule.get();
   }
 
-  public RemoteSession(Socket socket) throws IOException {
+  public static void setMaxBlocksPerTick(MinecraftServer _server, GameRules.IntRule rule) {
+    MAX_BLOCKS_PER_TICK = rule.get();
+  }
+
+  public RemoteSession(Socket socket, RateLimiter limiter) throws IOException {
     this.socket = socket;
+    this.limiter = limiter;
     init();
   }
 
   private void init() throws IOException {
+    address = socket.getRemoteSocketAddress().toString();
     socket.setTcpNoDelay(true);
     socket.setKeepAlive(true);
+    // probe quiet connections, so clients which vanished without closing are noticed within about a minute
+    setSocketOption(ExtendedSocketOptions.TCP_KEEPIDLE, KEEP_ALIVE_IDLE_SECONDS);
+    setSocketOption(ExtendedSocketOptions.TCP_KEEPINTERVAL, KEEP_ALIVE_INTERVAL_SECONDS);
+    setSocketOption(ExtendedSocketOptions.TCP_KEEPCOUNT, KEEP_ALIVE_PROBES);
     socket.setTrafficClass(0x10);
-    this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
-    this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+    // the bytes are counted and charged to the bytes per second limit as they arrive
+    InputStream input = new ThrottledInputStream(new CountingInputStream(socket.getInputStream(), bytesIn), limiter);
+    this.in = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+    this.out = new BufferedOutputStream(socket.getOutputStream());
+    if (TrafficRecorder.shouldRecord(getHostAddress())) {
+      startRecording();
+    }
     startThreads();
     McpiMod.LOGGER.info("Opened connection to " + socket.getRemoteSocketAddress());
   }
 
+  /** Not every platform supports the keep alive settings */
+  private void setSocketOption(SocketOption<Integer> option, int value) throws IOException {
+    if (socket.supportedOptions().contains(option)) {
+      socket.setOption(option, value);
+    }
+  }
+
   private void startThreads() {
-    this.inThread = new Thread(new InputThread());
-    this.inThread.start();
-    this.outThread = new Thread(new OutputThread());
-    this.outThread.start();
+    // virtual threads where the runtime has them, see SessionThreads
+    this.inThread = SessionThreads.start("mcpimod-in " + address, new InputThread());
+    this.outThread = SessionThreads.start("mcpimod-out " + address, new OutputThread());
+  }
+
+  /** Called at the start of every server tick, before the worlds are ticked */
+  public void startTick() {
+    commands.startTick();
+    blockBudget = MAX_BLOCKS_PER_TICK;
+    if (!streamedSnapshots.isEmpty()) {
+      long start = System.nanoTime();
+      streamedSnapshots.removeIf(this::captureSlices);
+      // the slices are part of the world.getBlocks which streams them
+      long elapsed = System.nanoTime() - start;
+      TickProfiler.recordSession(address, elapsed);
+      TickProfiler.recordCommand("world.getBlocks", elapsed);
+    }
+  }
+
+  /** Captures the next slices of a streamed snapshot, returns true once it is complete */
+  private boolean captureSlices(SliceSnapshot snapshot) {
+    try {
+      return snapshot.capture();
+    } catch (Exception e) {
+      McpiMod.LOGGER.warn("*ERROR* failed to capture blocks for " + address);
+      e.printStackTrace();
+      snapshot.cancel();
+      return true;
+    }
+  }
+
+  /** Continues the running task, returns true once it is done */
+  private boolean runTask(ServerWorld world) {
+    if (!taskDimension.equals(world.getRegistryKey()) || blockBudget <= 0) {
+      return false;
+    }
+    long start = System.nanoTime();
+    try {
+      blockBudget -= task.run(world, blockBudget);
+      if (!task.isDone()) {
+        return false;
+      }
+    } catch (Exception e) {
+      McpiMod.LOGGER.warn("*ERROR* at task: " + task.getClass().getSimpleName() + ", from "
+          + socket.getInetAddress().toString());
+      e.printStackTrace();
+      // the client reads an export up to its "end"
+      if (task instanceof ExportTask) {
+        send("Fail");
+        send(RegionCodec.END);
+      }
+    } finally {
+      // the work of a task shows up under its class name
+      TickProfiler.recordCommand(task.getClass().getSimpleName(), System.nanoTime() - start);
+    }
+    task = null;
+    return true;
+  }
+
+  private void startTask(ServerWorld world, BudgetedTask task) {
+    this.task = task;
+    this.taskDimension = world.getRegistryKey();
   }
 
+  /**
+   * Executes the queued commands targeting this world. Commands are executed
+   * strictly in order, so this stops at the first command for another world,
+   * which gets executed once that world is ticked.
+   */
   public void tick(ServerWorld world) {
-    int processedCount = 0;
-    String message;
-    while ((message = inQueue.poll()) != null) {
+    CommandQueue.QueuedLine queued;
+    while (commands.hasBudget(MAX_COMMANDS_PER_TICK)) {
+      // over the blocks per second limit everything waits until the blocks are paid back
+      if ((task != null || !commands.isEmpty()) && !limiter.mayWriteBlocks()) {
+        RateLimiter.DELAYED_TICKS.increment();
+        break;
+      }
+      // a running task blocks the following commands to keep their order
+      if (task != null) {
+        boolean done = runTask(world);
+        chargeBlocks();
+        if (!done) {
+          break;
+        }
+      }
+      if ((queued = commands.peek()) == null) {
+        break;
+      }
+
+      String message = queued.line;
+      String line = message;
+      RegistryKey<World> target = dimension;
+
+      try {
+        // commands may be prefixed with a dimension: "@minecraft:the_nether world.setBlock(...)"
+        if (message.startsWith("@")) {
+          int split = message.indexOf(' ');
+          target = parseDimension(message.substring(1, split));
+          line = message.substring(split + 1);
+        }
+      } catch (Exception e) {
+        McpiMod.LOGGER.warn("*ERROR* invalid dimension at command: " + message + ", from "
+            + socket.getInetAddress().toString());
+        commands.poll();
+        continue;
+      }
+
+      if (!target.equals(world.getRegistryKey())) {
+        if (world.getServer().getWorld(target) == null) {
+          McpiMod.LOGGER.warn("*ERROR* unknown dimension at command: " + message + ", from "
+              + socket.getInetAddress().toString());
+          commands.poll();
+          continue;
+        }
+        break;
+      }
+
+      if (queued.command == null) {
+        try {
+          queued.command = CommandLine.parse(line);
+        } catch (Exception e) {
+          McpiMod.LOGGER.warn("*ERROR* at command: " + message + ", from " + socket.getInetAddress().toString());
+          e.printStackTrace();
+          commands.poll();
+          commands.countCommand(MAX_COMMANDS_PER_TICK);
+          continue;
+        }
+      }
+      CommandLine command = queued.command;
+
+      // a streamed world.getBlocks answer shows the blocks as they were when it ran, so the
+      // following writes of the session wait until its last slice was captured
+      if (!streamedSnapshots.isEmpty() && !CommandLine.expectsResponse(command.method)) {
+        break;
+      }
+
+      // the following commands have to wait as well to keep their order
+      if (!isReady(world, message, command)) {
+        break;
+      }
+
+      if (!limiter.mayExecuteCommand()) {
+        if (!RateLimiter.REJECT) {
+          RateLimiter.DELAYED_TICKS.increment();
+          break;
+        }
+        commands.poll();
+        RateLimiter.REJECTED.increment();
+        // a "Fail" for a command without an answer would shift the answers of the client
+        if (CommandLine.expectsResponse(command.method)) {
+          send("Fail");
+          if (CommandLine.isMultiLine(command.method)) {
+            send(RegionCodec.END);
+          }
+        }
+        commands.countCommand(MAX_COMMANDS_PER_TICK);
+        continue;
+      }
+
+      commands.poll();
+      limiter.commandExecuted();
       try {
-        handleLine(message, world);
+        handleLine(command, world, queued.receivedAt);
       } catch (Exception e) {
         McpiMod.LOGGER.warn("*ERROR* at command: " + message + ", from " + socket.getInetAddress().toString());
         e.printStackTrace();
       }
+      chargeBlocks();
 
-      processedCount++;
-      if (processedCount >= MAX_COMMANDS_PER_TICK) {
+      // only worth a warning if commands are actually left for the next tick
+      if (commands.countCommand(MAX_COMMANDS_PER_TICK) && !commands.isEmpty()) {
+        CommandMetrics.LIMITED_TICKS.increment();
         McpiMod.LOGGER
             .warn("Over " + MAX_COMMANDS_PER_TICK + " commands were queued - deferring the other to next tick");
-        break;
       }
     }
 
-    if (!running && inQueue.size() <= 0) {
+    if (!running && commands.isEmpty() && task == null) {
+      if (buildMode) {
+        endBuildMode(world.getServer());
+      }
       pendingRemoval = true;
     }
   }
 
-  private void handleLine(String line, ServerWorld world) {
-    // System.out.println(line);
-    String methodName = line.substring(0, line.indexOf("("));
-    // split string into args, handles , inside " i.e. ","
-    String[] args = line.substring(line.indexOf("(") + 1, line.length() - 1).split(",");
-    // System.out.println(methodName + ":" + Arrays.toString(args));
-    handleCommand(methodName, args, world);
+  /**
+   * The block commands of the core see the world through this, it is only
+   * replaced when the session moves to another world
+   */
+  private ServerWorldAccess getWorldAccess(ServerWorld world) {
+    if (worldAccess == null || worldAccess.getWorld() != world) {
+      worldAccess = new ServerWorldAccess(world, this::setBlockState, streamedSnapshots::add);
+    }
+    return worldAccess;
+  }
+
+  /** Charges the blocks written since the last call to the rate limits */
+  private void chargeBlocks() {
+    if (writtenBlocks > 0) {
+      limiter.blocksWritten(writtenBlocks);
+      writtenBlocks = 0;
+    }
+  }
+
+  /**
+   * Checks if all chunks targeted by a command are loaded. If not, they get
+   * loaded asynchronously and the command is parked until they are ready,
+   * or until the timeout is reached and they are loaded synchronously.
+   */
+  private boolean isReady(ServerWorld world, String message, CommandLine command) {
+    if (message != parkedMessage) {
+      parkedMessage = message;
+      parkedChunks = getTargetChunks(world, command);
+      parkedSince = -1;
+    }
+
+    long now = world.getServer().getTicks();
+    if (parkedChunks == null || ChunkPreloader.request(world, parkedChunks)) {
+      if (parkedSince >= 0) {
+        ChunkPreloader.PARKED_TICKS.addAndGet(now - parkedSince);
+      }
+      parkedMessage = null;
+      parkedChunks = null;
+      return true;
+    }
+
+    if (parkedSince < 0) {
+      parkedSince = now;
+      ChunkPreloader.PARKED_COMMANDS.incrementAndGet();
+    } else if (now - parkedSince >= ChunkPreloader.TIMEOUT_TICKS) {
+      McpiMod.LOGGER.warn("Chunks for command: " + message + " didn't load in time - loading them synchronously");
+      ChunkPreloader.TIMEOUTS.incrementAndGet();
+      ChunkPreloader.PARKED_TICKS.addAndGet(now - parkedSince);
+      parkedMessage = null;
+      parkedChunks = null;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns the chunks (packed with ChunkPos.toLong) a command reads or
+   * writes, or null if they are loaded already, there are none or too many
+   * to preload them.
+   */
+  private LongArrayList getTargetChunks(ServerWorld world, CommandLine command) {
+    try {
+      String c = command.method;
+      String[] args = command.args;
+
+      switch (c) {
+        case "world.setBlock":
+        case "world.getBlock":
+        case "world.floodFill":
+        case "player.setPos":
+        case "player.setTile": {
+          BlockPos pos = parseBlockPos(args);
+          return getChunksBetween(world, pos, pos);
+        }
+        case "entity.setPos":
+        case "entity.setTile": {
+          BlockPos pos = parseBlockPos(Arrays.copyOfRange(args, 1, 4));
+          return getChunksBetween(world, pos, pos);
+        }
+        case "world.setBlocks":
+        case "world.getBlocks":
+        case "world.replaceBlocks":
+        case "world.exportRegion":
+          return getChunksBetween(world, parseBlockPos(args), parseBlockPos(Arrays.copyOfRange(args, 3, 6)));
+        case "world.getChangesSince":
+          return getChunksBetween(world, parseBlockPos(Arrays.copyOfRange(args, 1, 4)),
+              parseBlockPos(Arrays.copyOfRange(args, 4, 7)));
+        case "world.importRegion": {
+          BlockPos origin = parseBlockPos(args);
+          return getChunksBetween(world, origin,
+              origin.add(Integer.parseInt(args[3]) - 1, 0, Integer.parseInt(args[5]) - 1));
+        }
+        case "world.setSphere": {
+          BlockPos center = parseBlockPos(args);
+          int radius = (int) Double.parseDouble(args[3]);
+          return getChunksBetween(world, center.add(-radius, 0, -radius), center.add(radius, 0, radius));
+        }
+        case "world.setCylinder": {
+          BlockPos base = parseBlockPos(args);
+          int radius = (int) Double.parseDouble(args[3]);
+          return getChunksBetween(world, base.add(-radius, 0, -radius), base.add(radius, 0, radius));
+        }
+        case "world.setLine":
+          return getChunksBetween(world, parseBlockPos(args), parseBlockPos(Arrays.copyOfRange(args, 3, 6)));
+        case "world.setPolygon": {
+          int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, minZ = Integer.MAX_VALUE, maxZ = Integer.MIN_VALUE;
+          for (int i = 3; i + 2 < args.length; i += 3) {
+            int x = (int) Double.parseDouble(args[i]);
+            int z = (int) Double.parseDouble(args[i + 2]);
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minZ = Math.min(minZ, z);
+            maxZ = Math.max(maxZ, z);
+          }
+          return getChunksBetween(world, new BlockPos(minX, 0, minZ), new BlockPos(maxX, 0, maxZ));
+        }
+        case "world.getHeight": {
+          BlockPos pos = new BlockPos(Integer.parseInt(args[0]), 0, Integer.parseInt(args[1]));
+          return getChunksBetween(world, pos, pos);
+        }
+        default:
+          return null;
+      }
+    } catch (Exception e) {
+      // invalid commands are reported once they are executed
+      return null;
+    }
+  }
+
+  private LongArrayList getChunksBetween(ServerWorld world, BlockPos pos1, BlockPos pos2) {
+    int minX = Math.min(pos1.getX(), pos2.getX()) >> 4;
+    int maxX = Math.max(pos1.getX(), pos2.getX()) >> 4;
+    int minZ = Math.min(pos1.getZ(), pos2.getZ()) >> 4;
+    int maxZ = Math.max(pos1.getZ(), pos2.getZ()) >> 4;
+
+    if ((long) (maxX - minX + 1) * (maxZ - minZ + 1) > ChunkPreloader.MAX_PRELOAD_CHUNKS) {
+      return null;
+    }
+    // usually the chunks are loaded, then there is nothing to wait for
+    if (ChunkPreloader.areLoaded(world, minX, minZ, maxX, maxZ)) {
+      return null;
+    }
+
+    LongArrayList chunks = new LongArrayList();
+    for (int x = minX; x <= maxX; x++) {
+      for (int z = minZ; z <= maxZ; z++) {
+        chunks.add(ChunkPos.toLong(x, z));
+      }
+    }
+    return chunks;
+  }
+
+  private void handleLine(CommandLine command, ServerWorld world, long receivedAt) {
+    String methodName = command.method;
+    String[] args = command.args;
+    long start = System.nanoTime();
+    try {
+      handleCommand(methodName, args, world);
+    } finally {
+      long elapsed = System.nanoTime() - start;
+      CommandMetrics.record(methodName, start - receivedAt, elapsed);
+      TickProfiler.recordCommand(methodName, elapsed);
+      SlowCommandLog.record(address, methodName, args, elapsed);
+    }
   }
 
   private void handleCommand(String c, String[] args, ServerWorld world) {
     // McpiMod.LOGGER.info("Received Command: " + c);
 
+    if (BlockCommands.handle(c, args, getWorldAccess(world), responses)) {
+      return;
+    }
+
     // WORLD commands
 
     if (c.startsWith("world.")) {
-      if (c.equals("world.setBlock")) {
+      if (c.equals("world.setBlocks")) {
+        BlockPos pos1 = parseBlockPos(args);
+        BlockPos pos2 = parseBlockPos(Arrays.copyOfRange(args, 3, 6));
+
+        int subId = args.length >= 8 ? Integer.parseInt(args[7]) : 0;
+        BlockState state = BlockIds.blockIdToBlockState(Integer.parseInt(args[6]), subId);
+
+        setBlockStates(world, pos1, pos2, state);
+      }
+
+      else if (c.equals("world.replaceBlocks")) {
+        BlockPos pos1 = parseBlockPos(args);
+        BlockPos pos2 = parseBlockPos(Arrays.copyOfRange(args, 3, 6));
+
+        int fromId = Integer.parseInt(args[6]);
+        int subId = args.length >= 9 ? Integer.parseInt(args[8]) : 0;
+        BlockState state = BlockIds.blockIdToBlockState(Integer.parseInt(args[7]), subId);
+
+        startTask(world, new ReplaceTask(this::setBlockState, pos1, pos2, fromId, state));
+      }
+
+      else if (c.equals("world.floodFill")) {
         BlockPos pos = parseBlockPos(args);
+        BlockState state = BlockIds.blockIdToBlockState(Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+        int maxBlocks = Integer.parseInt(args[5]);
+
+        startTask(world, new FloodFillTask(this::setBlockState, pos, state, maxBlocks));
+      }
+
+      else if (c.equals("world.exportRegion")) {
+        BlockPos pos1 = parseBlockPos(args);
+        BlockPos pos2 = parseBlockPos(Arrays.copyOfRange(args, 3, 6));
+
+        startTask(world, new ExportTask(this::send, responses::size, pos1, pos2));
+      }
 
-        int subId = args.length >= 5 ? Integer.parseInt(args[4]) : 0;
-        BlockState state = blockIdToBlockState(Integer.parseInt(args[3]), subId);
+      else if (c.equals("world.importRegion")) {
+        // an unfinished import ends here, even if this one turns out to be invalid
+        regionImport = null;
+        BlockPos origin = parseBlockPos(args);
+        int sizeX = Integer.parseInt(args[3]);
+        int sizeY = Integer.parseInt(args[4]);
+        int sizeZ = Integer.parseInt(args[5]);
 
-        world.setBlockState(pos, state);
+        regionImport = new RegionImport(this::setBlockState, origin, sizeX, sizeY, sizeZ);
+      }
 
-        if (state.isOf(Blocks.TNT) && subId > 0) {
-          TntBlock.primeTnt(world, pos);
-          world.removeBlock(pos, false);
+      else if (c.equals("world.importRegionData")) {
+        if (regionImport == null) {
+          McpiMod.LOGGER.warn("*ERROR* region data without world.importRegion, from "
+              + socket.getInetAddress().toString());
+        } else {
+          boolean last;
+          try {
+            // Patch the line back together as it was split before
+            last = regionImport.accept(String.join(",", args));
+          } catch (IllegalArgumentException e) {
+            // the following data lines are dropped as well, instead of being placed at the wrong positions
+            McpiMod.LOGGER.warn("*ERROR* invalid region data, the import was cancelled, from "
+                + socket.getInetAddress().toString());
+            e.printStackTrace();
+            regionImport = null;
+            return;
+          }
+          // the blocks are placed within the block budget like the other bulk writes
+          startTask(world, regionImport);
+          if (last) {
+            regionImport = null;
+          }
         }
       }
 
-      else if (c.equals("world.setBlocks")) {
+      else if (c.equals("world.setSphere")) {
+        BlockPos center = parseBlockPos(args);
+        int radius = (int) Double.parseDouble(args[3]);
+
+        int subId = args.length >= 6 ? Integer.parseInt(args[5]) : 0;
+        BlockState state = BlockIds.blockIdToBlockState(Integer.parseInt(args[4]), subId);
+        boolean hollow = args.length >= 7 && parseBoolean(args[6]);
+
+        startTask(world, new ShapeTask(this::setBlockState,
+            Shapes.sphere(center.getX(), center.getY(), center.getZ(), radius, hollow), state));
+      }
+
+      else if (c.equals("world.setCylinder")) {
+        BlockPos base = parseBlockPos(args);
+        int radius = (int) Double.parseDouble(args[3]);
+        int height = (int) Double.parseDouble(args[4]);
+
+        int subId = args.length >= 7 ? Integer.parseInt(args[6]) : 0;
+        BlockState state = BlockIds.blockIdToBlockState(Integer.parseInt(args[5]), subId);
+        boolean hollow = args.length >= 8 && parseBoolean(args[7]);
+
+        startTask(world, new ShapeTask(this::setBlockState,
+            Shapes.cylinder(base.getX(), base.getY(), base.getZ(), radius, height, hollow), state));
+      }
+
+      else if (c.equals("world.setLine")) {
         BlockPos pos1 = parseBlockPos(args);
         BlockPos pos2 = parseBlockPos(Arrays.copyOfRange(args, 3, 6));
 
         int subId = args.length >= 8 ? Integer.parseInt(args[7]) : 0;
-        BlockState state = blockIdToBlockState(Integer.parseInt(args[6]), subId);
+        BlockState state = BlockIds.blockIdToBlockState(Integer.parseInt(args[6]), subId);
 
-        setBlockStates(world, pos1, pos2, state);
+        startTask(world, new ShapeTask(this::setBlockState,
+            Shapes.line(pos1.getX(), pos1.getY(), pos1.getZ(), pos2.getX(), pos2.getY(), pos2.getZ()), state));
       }
 
-      else if (c.equals("world.getBlock")) {
-        BlockPos pos = parseBlockPos(args);
-        BlockState state = world.getBlockState(pos);
+      else if (c.equals("world.setPolygon")) {
+        BlockState state = BlockIds.blockIdToBlockState(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+        boolean hollow = parseBoolean(args[2]);
 
-        int blockId = blockStateToBlockId(state);
+        int[] vertices = new int[(args.length - 3) / 3 * 3];
+        for (int i = 0; i < vertices.length; i++) {
+          vertices[i] = (int) Double.parseDouble(args[i + 3]);
+        }
 
-        send(blockId);
+        startTask(world, new ShapeTask(this::setBlockState, Shapes.polygon(vertices, hollow), state));
       }
 
       // TODO: getBlockWithData
 
-      else if (c.equals("world.getBlocks")) {
+      // world.getBlock, world.getBlocks, world.setBlock and world.getHeight are in BlockCommands
+
+      else if (c.equals("world.rayCast")) {
+        Vec3d origin = parsePos(args);
+        Vec3d direction = parsePos(Arrays.copyOfRange(args, 3, 6));
+        double maxDistance = Double.parseDouble(args[6]);
+
+        sendRayCast(world, origin, direction, maxDistance);
+      }
+
+      else if (c.equals("world.getPlayerIds")) {
+        List<ServerPlayerEntity> players = PlayerRegistry.getPlayers();
+        ResponseWriter out = response();
+        for (int i = 0; i < players.size(); i++) {
+          if (i > 0) {
+            out.append(',');
+          }
+          out.append(players.get(i).getId());
+        }
+        send(out);
+      }
+
+      else if (c.equals("world.getEntities")) {
         BlockPos pos1 = parseBlockPos(args);
         BlockPos pos2 = parseBlockPos(Arrays.copyOfRange(args, 3, 6));
+        String type = args.length >= 7 ? args[6] : null;
+        int maxResults = args.length >= 8 ? Integer.parseInt(args[7]) : MAX_ENTITY_RESULTS;
 
-        List<Integer> blockIds = getBlockStatesAsIds(world, pos1, pos2);
+        Box box = new Box(Vec3d.of(pos1), Vec3d.of(pos2)).stretch(1, 1, 1);
+        sendEntities(getEntities(world, box, type, e -> true, maxResults));
+      }
 
-        send(String.join(",", blockIds.stream().map(i -> i.toString()).toList()));
+      else if (c.equals("world.getPlayerId")) {
+        ServerPlayerEntity player = PlayerRegistry.getByName(args[0]);
+        if (player == null) {
+          McpiMod.LOGGER.warn("*ERROR* remote session error: Player " + args[0] + " not found");
+          send("Fail");
+        } else {
+          send(response().append(player.getId()));
+        }
       }
 
-      else if (c.equals("world.getHeight")) {
-        int x = Integer.parseInt(args[0]);
-        int z = Integer.parseInt(args[1]);
+      else if (c.equals("world.setBuildMode")) {
+        boolean enable = parseBoolean(args[0]);
+        if (buildMode && !enable) {
+          endBuildMode(world.getServer());
+        }
+        buildMode = enable;
+      }
 
-        int highestY = 0;
-        for (int y = 0; y <= 255; y++) {
-          BlockPos pos = new BlockPos(x, y, z);
-          BlockState state = world.getBlockState(pos);
-          if (!(state.isOf(Blocks.AIR) || state.isOf(Blocks.CAVE_AIR) || state.isOf(Blocks.VOID_AIR))) {
-            highestY = y;
-          }
+      else if (c.equals("world.setDimension")) {
+        RegistryKey<World> key = parseDimension(args[0]);
+        // checked here, an unknown dimension would drop every following command
+        if (world.getServer().getWorld(key) == null) {
+          McpiMod.LOGGER.warn("*ERROR* remote session error: Dimension " + args[0] + " not found");
+        } else {
+          dimension = key;
         }
+      }
 
-        send(highestY);
+      else if (c.equals("world.getDimension")) {
+        send(dimension.getValue().toString());
       }
 
-      else if (c.equals("world.getPlayerIds")) {
-        List<ServerPlayerEntity> players = getPlayerEntitys(world);
-        List<String> playerIds = players.stream().map(player -> Integer.toString(player.getId())).toList();
+      else if (c.equals("world.getChangesSince")) {
+        long since = Long.parseLong(args[0]);
+        BlockPos pos1 = parseBlockPos(Arrays.copyOfRange(args, 1, 4));
+        BlockPos pos2 = parseBlockPos(Arrays.copyOfRange(args, 4, 7));
+
+        int minX, maxX, minY, maxY, minZ, maxZ;
+        minX = Math.min(pos1.getX(), pos2.getX());
+        maxX = Math.max(pos1.getX(), pos2.getX());
+        minY = Math.max(Math.min(pos1.getY(), pos2.getY()), world.getBottomY());
+        maxY = Math.min(Math.max(pos1.getY(), pos2.getY()), world.getTopY() - 1);
+        minZ = Math.min(pos1.getZ(), pos2.getZ());
+        maxZ = Math.max(pos1.getZ(), pos2.getZ());
+
+        long version = ChangeTracker.getVersion();
+        LongArrayList sections = ChangeTracker.getChangesSince(world, since,
+            minX >> 4, minY >> 4, minZ >> 4, maxX >> 4, maxY >> 4, maxZ >> 4);
+        if (sections == null) {
+          // too many sections, the client has to ask for smaller regions
+          send("Fail");
+          return;
+        }
 
-        send(String.join(",", playerIds));
-      }
+        // only the changed sections are copied, clipped to the requested region
+        List<BlockPos[]> boxes = new ArrayList<>(sections.size());
+        List<WorldSnapshot> snapshots = new ArrayList<>(sections.size());
+        for (int i = 0; i < sections.size(); i++) {
+          long section = sections.getLong(i);
+          int sx = ChunkSectionPos.unpackX(section) << 4;
+          int sy = ChunkSectionPos.unpackY(section) << 4;
+          int sz = ChunkSectionPos.unpackZ(section) << 4;
+          BlockPos lo = new BlockPos(Math.max(sx, minX), Math.max(sy, minY), Math.max(sz, minZ));
+          BlockPos hi = new BlockPos(Math.min(sx + 15, maxX), Math.min(sy + 15, maxY), Math.min(sz + 15, maxZ));
+          boxes.add(new BlockPos[] { lo, hi });
+          snapshots.add(WorldSnapshot.capture(world, lo, hi));
+        }
 
-      else if (c.equals("world.getPlayerId")) {
-        ServerPlayerEntity player = world.getServer().getPlayerManager().getPlayer(args[0]);
-        send(player.getId());
+        sendAsync(out -> {
+          out.append(version);
+          for (int i = 0; i < boxes.size(); i++) {
+            BlockPos lo = boxes.get(i)[0];
+            BlockPos hi = boxes.get(i)[1];
+            out.append('|')
+                .append(lo.getX()).append(',').append(lo.getY()).append(',').append(lo.getZ()).append(',')
+                .append(hi.getX()).append(',').append(hi.getY()).append(',').append(hi.getZ()).append(',');
+            BlockIdStream ids = new BlockIdStream(snapshots.get(i), lo.getX(), lo.getY(), lo.getZ(), hi.getX(),
+                hi.getY(), hi.getZ());
+            while (ids.writeNext(out)) {
+              // sections are small enough to be answered as one line
+            }
+          }
+        });
       }
 
       // TODO: saveCheckpoint
@@ -231,14 +847,27 @@ public class RemoteSession {
 
     // PLAYER commands
 
+    else if (c.equals("player.setPlayer")) {
+      // binds the player commands of this session to one player, no name goes back to the first player
+      if (args[0].isEmpty()) {
+        boundPlayer = null;
+      } else {
+        ServerPlayerEntity player = PlayerRegistry.getByName(args[0]);
+        if (player == null) {
+          McpiMod.LOGGER.warn("*ERROR* remote session error: Player " + args[0] + " not found");
+        } else {
+          boundPlayer = player.getUuid();
+        }
+      }
+    }
+
     else if (c.startsWith("player.")) {
       ServerPlayerEntity player = getPlayer(world);
 
       if (player != null) {
 
         if (c.equals("player.getPos")) {
-          Vec3d pos = player.getPos();
-          send(serializePos(pos));
+          send(appendPos(response(), player.getPos()));
         }
 
         else if (c.equals("player.setPos")) {
@@ -251,7 +880,7 @@ public class RemoteSession {
           int x = (int) pos.x;
           int y = (int) pos.y;
           int z = (int) pos.z;
-          send(x + "," + y + "," + z);
+          send(response().append(x).append(',').append(y).append(',').append(z));
         }
 
         else if (c.equals("player.setTile")) {
@@ -269,7 +898,7 @@ public class RemoteSession {
 
           Vec3d dVec = new Vec3d(x, y, z);
 
-          send(serializePos(dVec.normalize())); // Normalize for safety
+          send(appendPos(response(), dVec.normalize())); // Normalize for safety
         }
 
         else if (c.equals("player.setDirection")) {
@@ -281,8 +910,13 @@ public class RemoteSession {
           player.teleport(world, pos.x, pos.y, pos.z, (float) yaw, (float) pitch);
         }
 
+        else if (c.equals("player.getTargetBlock")) {
+          double maxDistance = args.length >= 1 && !args[0].isEmpty() ? Double.parseDouble(args[0]) : 128;
+          sendRayCast(world, player.getEyePos(), player.getRotationVec(1.0f), maxDistance);
+        }
+
         else if (c.equals("player.getRotation")) {
-          send(player.getYaw());
+          send(response().append(player.getYaw()));
         }
 
         else if (c.equals("player.setRotation")) {
@@ -293,7 +927,7 @@ public class RemoteSession {
         }
 
         else if (c.equals("player.getPitch")) {
-          send(player.getPitch());
+          send(response().append(player.getPitch()));
         }
 
         else if (c.equals("player.setPitch")) {
@@ -304,38 +938,18 @@ public class RemoteSession {
         }
 
         else if (c.equals("player.events.block.hits")) {
-          Iterator<BlockEvent> it = BLOCK_EVENTS.iterator();
-          LinkedList<BlockEvent> events = new LinkedList<>();
-          while (it.hasNext()) {
-            BlockEvent event = it.next();
-            if (event.entity.equals(player)) {
-              events.add(event);
-              it.remove();
-            }
-          }
-
-          send(String.join("|", events.stream().map(event -> event.serialize()).toList()));
+          sendEvents(BLOCK_EVENTS.poll(event -> event.entity.equals(player)), BlockEvent::serialize);
         }
 
         else if (c.equals("player.events.chat.posts")) {
-          Iterator<ChatEvent> it = CHAT_EVENTS.iterator();
-          LinkedList<ChatEvent> events = new LinkedList<>();
-          while (it.hasNext()) {
-            ChatEvent event = it.next();
-            if (event.entity.equals(player)) {
-              events.add(event);
-              it.remove();
-            }
-          }
-
-          send(String.join("|", events.stream().map(event -> event.serialize()).toList()));
+          sendEvents(CHAT_EVENTS.poll(event -> event.entity.equals(player)), ChatEvent::serialize);
         }
 
         // TODO: projectile events
 
         else if (c.equals("player.events.clear")) {
-          BLOCK_EVENTS.removeIf(event -> event.entity.equals(player));
-          CHAT_EVENTS.removeIf(event -> event.entity.equals(player));
+          BLOCK_EVENTS.clear(event -> event.entity.equals(player));
+          CHAT_EVENTS.clear(event -> event.entity.equals(player));
         }
 
       }
@@ -343,6 +957,43 @@ public class RemoteSession {
 
     // ENTITY commands
 
+    else if (c.equals("entity.setPosMany")) {
+      // groups of "id,x,y,z" separated by ";"
+      int count = parseBatch(args, 4);
+      int missing = 0;
+      for (int i = 0; i < count * 4; i += 4) {
+        Entity entity = world.getEntityById((int) batchBuffer[i]);
+        if (entity == null) {
+          missing++;
+          continue;
+        }
+        entity.teleport(batchBuffer[i + 1], batchBuffer[i + 2], batchBuffer[i + 3]);
+      }
+      if (missing > 0) {
+        McpiMod.LOGGER.warn("*ERROR* remote session error: " + missing + " entities not found");
+      }
+    }
+
+    else if (c.equals("entity.getPosMany")) {
+      // positions are returned in the order of the ids, empty for missing entities and invalid ids
+      ResponseWriter out = response();
+      for (int i = 0; i < args.length; i++) {
+        if (i > 0) {
+          out.append('|');
+        }
+        Entity entity = null;
+        try {
+          entity = world.getEntityById(Integer.parseInt(args[i].trim()));
+        } catch (NumberFormatException e) {
+          McpiMod.LOGGER.warn("*ERROR* remote session error: invalid entity id " + args[i]);
+        }
+        if (entity != null) {
+          appendPos(out, entity.getPos());
+        }
+      }
+      send(out);
+    }
+
     else if (c.startsWith("entity.")) {
       Entity entity = getEntityFromId(world, Integer.parseInt(args[0]));
 
@@ -350,8 +1001,7 @@ public class RemoteSession {
         String[] mArgs = Arrays.copyOfRange(args, 1, args.length);
 
         if (c.equals("entity.getPos")) {
-          Vec3d pos = entity.getPos();
-          send(serializePos(pos));
+          send(appendPos(response(), entity.getPos()));
         }
 
         else if (c.equals("entity.setPos")) {
@@ -364,7 +1014,7 @@ public class RemoteSession {
           int x = (int) pos.x;
           int y = (int) pos.y;
           int z = (int) pos.z;
-          send(x + "," + y + "," + z);
+          send(response().append(x).append(',').append(y).append(',').append(z));
         }
 
         else if (c.equals("entity.setTile")) {
@@ -382,7 +1032,7 @@ public class RemoteSession {
 
           Vec3d dVec = new Vec3d(x, y, z);
 
-          send(serializePos(dVec.normalize())); // Normalize for safety
+          send(appendPos(response(), dVec.normalize())); // Normalize for safety
         }
 
         else if (c.equals("entity.setDirection")) {
@@ -394,8 +1044,13 @@ public class RemoteSession {
           entity.teleport(world, pos.x, pos.y, pos.z, Set.of(), (float) yaw, (float) pitch);
         }
 
+        else if (c.equals("entity.getTargetBlock")) {
+          double maxDistance = mArgs.length >= 1 ? Double.parseDouble(mArgs[0]) : 128;
+          sendRayCast(world, entity.getEyePos(), entity.getRotationVec(1.0f), maxDistance);
+        }
+
         else if (c.equals("entity.getRotation")) {
-          send(entity.getYaw());
+          send(response().append(entity.getYaw()));
         }
 
         else if (c.equals("entity.setRotation")) {
@@ -406,7 +1061,7 @@ public class RemoteSession {
         }
 
         else if (c.equals("entity.getPitch")) {
-          send(entity.getPitch());
+          send(response().append(entity.getPitch()));
         }
 
         else if (c.equals("entity.setPitch")) {
@@ -421,39 +1076,30 @@ public class RemoteSession {
           send(name);
         }
 
-        else if (c.equals("entity.events.block.hits")) {
-          Iterator<BlockEvent> it = BLOCK_EVENTS.iterator();
-          LinkedList<BlockEvent> events = new LinkedList<>();
-          while (it.hasNext()) {
-            BlockEvent event = it.next();
-            if (event.entity.equals(entity)) {
-              events.add(event);
-              it.remove();
-            }
-          }
+        else if (c.equals("entity.getNearbyEntities")) {
+          double radius = Double.parseDouble(mArgs[0]);
+          String type = mArgs.length >= 2 ? mArgs[1] : null;
+          int maxResults = mArgs.length >= 3 ? Integer.parseInt(mArgs[2]) : MAX_ENTITY_RESULTS;
 
-          send(String.join("|", events.stream().map(event -> event.serialize()).toList()));
+          // the box is found through the entity sections, the exact distance is checked while collecting
+          Vec3d center = entity.getPos();
+          sendEntities(getEntities(world, new Box(center, center).expand(radius), type,
+              e -> e != entity && e.getPos().squaredDistanceTo(center) <= radius * radius, maxResults));
         }
 
-        else if (c.equals("entity.events.chat.posts")) {
-          Iterator<ChatEvent> it = CHAT_EVENTS.iterator();
-          LinkedList<ChatEvent> events = new LinkedList<>();
-          while (it.hasNext()) {
-            ChatEvent event = it.next();
-            if (event.entity.equals(entity)) {
-              events.add(event);
-              it.remove();
-            }
-          }
+        else if (c.equals("entity.events.block.hits")) {
+          sendEvents(BLOCK_EVENTS.poll(event -> event.entity.equals(entity)), BlockEvent::serialize);
+        }
 
-          send(String.join("|", events.stream().map(event -> event.serialize()).toList()));
+        else if (c.equals("entity.events.chat.posts")) {
+          sendEvents(CHAT_EVENTS.poll(event -> event.entity.equals(entity)), ChatEvent::serialize);
         }
 
         // TODO: projectile events
 
         else if (c.equals("entity.events.clear")) {
-          BLOCK_EVENTS.removeIf(event -> event.entity.equals(entity));
-          CHAT_EVENTS.removeIf(event -> event.entity.equals(entity));
+          BLOCK_EVENTS.clear(event -> event.entity.equals(entity));
+          CHAT_EVENTS.clear(event -> event.entity.equals(entity));
         }
 
       }
@@ -481,15 +1127,11 @@ public class RemoteSession {
       }
 
       if (c.equals("events.block.hits")) {
-        Stream<String> events = BLOCK_EVENTS.stream().map(event -> event.serialize());
-        send(String.join("|", events.toList()));
-        BLOCK_EVENTS.clear();
+        sendEvents(BLOCK_EVENTS.pollAll(), BlockEvent::serialize);
       }
 
       else if (c.equals("events.chat.posts")) {
-        Stream<String> events = CHAT_EVENTS.stream().map(event -> event.serialize());
-        send(String.join("|", events.toList()));
-        CHAT_EVENTS.clear();
+        sendEvents(CHAT_EVENTS.pollAll(), ChatEvent::serialize);
       }
 
       // TODO: projectile events
@@ -498,20 +1140,74 @@ public class RemoteSession {
 
   }
 
+  /** Sends "x,y,z,face,blockId" of the hit block, or an empty line if nothing was hit */
+  private void sendRayCast(ServerWorld world, Vec3d origin, Vec3d direction, double maxDistance) {
+    RayCast.Hit hit = RayCast.cast(world, origin, direction, maxDistance);
+    ResponseWriter out = response();
+    if (hit != null) {
+      hit.serialize(out);
+    }
+    send(out);
+  }
+
+  /** Sends the events separated by "|" */
+  private <T> void sendEvents(Iterable<T> events, BiConsumer<T, ResponseWriter> serializer) {
+    ResponseWriter out = response();
+    boolean first = true;
+    for (T event : events) {
+      if (!first) {
+        out.append('|');
+      }
+      serializer.accept(event, out);
+      first = false;
+    }
+    send(out);
+  }
+
   private void sendMessageToAll(ServerWorld world, String msg) {
     world.getServer().getPlayerManager().broadcast(Text.of(msg), false);
   }
 
   private ServerPlayerEntity getPlayer(ServerWorld world) {
-    ServerPlayerEntity player = world.getServer().getPlayerManager().getPlayerList().get(0);
+    ServerPlayerEntity player = boundPlayer != null ? PlayerRegistry.getByUuid(boundPlayer)
+        : PlayerRegistry.getFirst();
     if (player == null) {
       McpiMod.LOGGER.warn("*ERROR* no player found.");
     }
     return player;
   }
 
-  private List<ServerPlayerEntity> getPlayerEntitys(ServerWorld world) {
-    return world.getServer().getPlayerManager().getPlayerList();
+  /**
+   * Finds the entities in the box using the entity sections of the world.
+   * The search stops once the limit (at most MAX_ENTITY_RESULTS) is reached.
+   */
+  private List<Entity> getEntities(ServerWorld world, Box box, String typeName, Predicate<Entity> filter,
+      int maxResults) {
+    TypeFilter<Entity, ? extends Entity> type = TypeFilter.instanceOf(Entity.class);
+    if (typeName != null && !typeName.isEmpty()) {
+      type = EntityType.get(typeName.trim())
+          .orElseThrow(() -> new IllegalArgumentException("Unknown entity type: " + typeName));
+    }
+    List<Entity> entities = new ArrayList<>();
+    int limit = Math.min(maxResults, MAX_ENTITY_RESULTS);
+    if (limit > 0) {
+      world.collectEntitiesByType(type, box, filter, entities, limit);
+    }
+    return entities;
+  }
+
+  /** Sends the entities as "id,type,x,y,z|..." */
+  private void sendEntities(List<Entity> entities) {
+    ResponseWriter out = response();
+    for (int i = 0; i < entities.size(); i++) {
+      Entity e = entities.get(i);
+      if (i > 0) {
+        out.append('|');
+      }
+      out.append(e.getId()).append(',').append(EntityType.getId(e.getType()).toString()).append(',');
+      appendPos(out, e.getPos());
+    }
+    send(out);
   }
 
   private void setBlockStates(ServerWorld world, BlockPos pos1, BlockPos pos2, BlockState state) {
@@ -526,645 +1222,46 @@ public class RemoteSession {
     for (int x = minX; x <= maxX; ++x) {
       for (int z = minZ; z <= maxZ; ++z) {
         for (int y = minY; y <= maxY; ++y) {
-          world.setBlockState(new BlockPos(x, y, z), state);
+          setBlockState(world, new BlockPos(x, y, z), state);
         }
       }
     }
   }
 
-  private List<Integer> getBlockStatesAsIds(ServerWorld world, BlockPos pos1, BlockPos pos2) {
-    int minX, maxX, minY, maxY, minZ, maxZ;
-    minX = pos1.getX() < pos2.getX() ? pos1.getX() : pos2.getX();
-    maxX = pos1.getX() >= pos2.getX() ? pos1.getX() : pos2.getX();
-    minY = pos1.getY() < pos2.getY() ? pos1.getY() : pos2.getY();
-    maxY = pos1.getY() >= pos2.getY() ? pos1.getY() : pos2.getY();
-    minZ = pos1.getZ() < pos2.getZ() ? pos1.getZ() : pos2.getZ();
-    maxZ = pos1.getZ() >= pos2.getZ() ? pos1.getZ() : pos2.getZ();
-
-    int w = maxX - minX;
-    int h = maxY - minY;
-    int d = maxZ - minZ;
-    List<Integer> blockData = new ArrayList<>(w * h * d);
+  /** All block writes of the session go through here */
+  private void setBlockState(ServerWorld world, BlockPos pos, BlockState state) {
+    writtenBlocks++;
+    if (!buildMode) {
+      world.setBlockState(pos, state);
+      return;
+    }
 
-    int i = 0;
-    for (int x = minX; x <= maxX; x++) {
-      for (int z = minZ; z <= maxZ; z++) {
-        for (int y = minY; y <= maxY; y++) {
-          int blockId = blockStateToBlockId(world.getBlockState(new BlockPos(x, y, z)));
-          blockData.add(i, blockId);
-          i++;
-        }
-      }
+    LongOpenHashSet positions = deferredLight.computeIfAbsent(world.getRegistryKey(), k -> new LongOpenHashSet());
+    BuildMode.begin(positions);
+    try {
+      world.setBlockState(pos, state, BuildMode.FLAGS);
+    } finally {
+      BuildMode.end();
     }
 
-    return blockData;
+    if (positions.size() >= BuildMode.MAX_DEFERRED) {
+      BuildMode.relight(world, positions);
+    }
   }
 
-  // Maybe there are better ways at doing this.
-  // An array won't work since some ids between are missing
-  /// Turns blockIds from the api to actual ingame block states, see:
-  /// https://pimylifeup.com/minecraft-pi-edition-api-reference/
-  private BlockState blockIdToBlockState(int id, int subId) {
-    switch (id) {
-      case 0:
-        return Blocks.AIR.getDefaultState();
-      case 1:
-        return Blocks.STONE.getDefaultState();
-      case 2:
-        return Blocks.GRASS_BLOCK.getDefaultState();
-      case 3:
-        return Blocks.DIRT.getDefaultState();
-      case 4:
-        return Blocks.COBBLESTONE.getDefaultState();
-      case 5:
-        switch (subId) {
-          case 0:
-            return Blocks.OAK_PLANKS.getDefaultState();
-          case 1:
-            return Blocks.SPRUCE_PLANKS.getDefaultState();
-          case 2:
-            return Blocks.BIRCH_PLANKS.getDefaultState();
-          default:
-            return Blocks.OAK_PLANKS.getDefaultState();
-        }
-      case 6:
-        switch (subId) {
-          case 0:
-            return Blocks.OAK_SAPLING.getDefaultState();
-          case 1:
-            return Blocks.SPRUCE_SAPLING.getDefaultState();
-          case 2:
-            return Blocks.BIRCH_SAPLING.getDefaultState();
-          default:
-            return Blocks.OAK_SAPLING.getDefaultState();
-        }
-      case 7:
-        return Blocks.BEDROCK.getDefaultState();
-      case 8:
-        return Blocks.WATER.getDefaultState();
-      case 9:
-        return Blocks.WATER.getDefaultState(); // TODO: figure out how to make stationary
-      case 10:
-        return Blocks.LAVA.getDefaultState();
-      case 11:
-        return Blocks.LAVA.getDefaultState(); // TODO: figure out how to make stationary
-      case 12:
-        return Blocks.SAND.getDefaultState();
-      case 13:
-        return Blocks.GRAVEL.getDefaultState();
-      case 14:
-        return Blocks.GOLD_ORE.getDefaultState();
-      case 15:
-        return Blocks.IRON_ORE.getDefaultState();
-      case 16:
-        return Blocks.COAL_ORE.getDefaultState();
-      case 17:
-        return Blocks.OAK_WOOD.getDefaultState();
-      case 18:
-        switch (subId) {
-          case 1:
-            return Blocks.OAK_LEAVES.getDefaultState();
-          case 2:
-            return Blocks.SPRUCE_LEAVES.getDefaultState();
-          case 3:
-            return Blocks.BIRCH_LEAVES.getDefaultState();
-          default:
-            return Blocks.OAK_LEAVES.getDefaultState();
-        }
-      case 20:
-        return Blocks.GLASS.getDefaultState();
-      case 21:
-        return Blocks.LAPIS_ORE.getDefaultState();
-      case 22:
-        return Blocks.LAPIS_BLOCK.getDefaultState();
-      case 24:
-        switch (subId) {
-          case 0:
-            return Blocks.SANDSTONE.getDefaultState();
-          case 1:
-            return Blocks.CHISELED_SANDSTONE.getDefaultState();
-          case 2:
-            return Blocks.SMOOTH_SANDSTONE.getDefaultState();
-          default:
-            return Blocks.SANDSTONE.getDefaultState();
-        }
-      case 26:
-        return Blocks.RED_BED.getDefaultState();
-      case 30:
-        return Blocks.COBWEB.getDefaultState();
-      case 31:
-        switch (subId) {
-          case 0:
-            return Blocks.DEAD_BUSH.getDefaultState();
-          case 1:
-            return Blocks.TALL_GRASS.getDefaultState();
-          case 2:
-            return Blocks.FERN.getDefaultState();
-          default:
-            return Blocks.DEAD_BUSH.getDefaultState();
-        }
-      case 35:
-        switch (subId) {
-          case 0:
-            return Blocks.WHITE_WOOL.getDefaultState();
-          case 1:
-            return Blocks.ORANGE_WOOL.getDefaultState();
-          case 2:
-            return Blocks.MAGENTA_WOOL.getDefaultState();
-          case 3:
-            return Blocks.LIGHT_BLUE_WOOL.getDefaultState();
-          case 4:
-            return Blocks.YELLOW_WOOL.getDefaultState();
-          case 5:
-            return Blocks.LIME_WOOL.getDefaultState();
-          case 6:
-            return Blocks.PINK_WOOL.getDefaultState();
-          case 7:
-            return Blocks.GRAY_WOOL.getDefaultState();
-          case 8:
-            return Blocks.LIGHT_GRAY_WOOL.getDefaultState();
-          case 9:
-            return Blocks.CYAN_WOOL.getDefaultState();
-          case 10:
-            return Blocks.PURPLE_WOOL.getDefaultState();
-          case 11:
-            return Blocks.BLUE_WOOL.getDefaultState();
-          case 12:
-            return Blocks.BROWN_WOOL.getDefaultState();
-          case 13:
-            return Blocks.GREEN_WOOL.getDefaultState();
-          case 14:
-            return Blocks.RED_WOOL.getDefaultState();
-          case 15:
-            return Blocks.BLACK_WOOL.getDefaultState();
-          default:
-            return Blocks.WHITE_WOOL.getDefaultState();
-        }
-      case 37:
-        return Blocks.DANDELION.getDefaultState();
-      case 38:
-        return Blocks.CORNFLOWER.getDefaultState();
-      case 39:
-        return Blocks.BROWN_MUSHROOM.getDefaultState();
-      case 40:
-        return Blocks.RED_MUSHROOM.getDefaultState();
-      case 41:
-        return Blocks.GOLD_BLOCK.getDefaultState();
-      case 42:
-        return Blocks.IRON_BLOCK.getDefaultState();
-      case 43:
-        switch (subId) {
-          case 0:
-            return Blocks.STONE_SLAB.getDefaultState().with(SlabBlock.TYPE, SlabType.DOUBLE);
-          case 1:
-            return Blocks.SANDSTONE_SLAB.getDefaultState().with(SlabBlock.TYPE, SlabType.DOUBLE);
-          case 2:
-            return Blocks.OAK_SLAB.getDefaultState().with(SlabBlock.TYPE, SlabType.DOUBLE);
-          case 3:
-            return Blocks.COBBLESTONE_SLAB.getDefaultState().with(SlabBlock.TYPE, SlabType.DOUBLE);
-          case 4:
-            return Blocks.BRICK_SLAB.getDefaultState().with(SlabBlock.TYPE, SlabType.DOUBLE);
-          case 5:
-            return Blocks.STONE_BRICK_SLAB.getDefaultState().with(SlabBlock.TYPE, SlabType.DOUBLE);
-          default:
-            return Blocks.STONE_SLAB.getDefaultState().with(SlabBlock.TYPE, SlabType.DOUBLE);
-        }
-      case 44:
-        switch (subId) {
-          case 0:
-            return Blocks.STONE_SLAB.getDefaultState();
-          case 1:
-            return Blocks.SANDSTONE_SLAB.getDefaultState();
-          case 2:
-            return Blocks.OAK_SLAB.getDefaultState();
-          case 3:
-            return Blocks.COBBLESTONE_SLAB.getDefaultState();
-          case 4:
-            return Blocks.BRICK_SLAB.getDefaultState();
-          case 5:
-            return Blocks.STONE_BRICK_SLAB.getDefaultState();
-          default:
-            return Blocks.STONE_SLAB.getDefaultState();
-        }
-      case 45:
-        return Blocks.BRICK_WALL.getDefaultState();
-      case 46:
-        return Blocks.TNT.getDefaultState();
-      case 47:
-        return Blocks.BOOKSHELF.getDefaultState();
-      case 48:
-        return Blocks.MOSSY_COBBLESTONE.getDefaultState();
-      case 49:
-        return Blocks.OBSIDIAN.getDefaultState();
-      case 50:
-        switch (subId) {
-          case 1:
-            return Blocks.WALL_TORCH.getDefaultState().with(WallTorchBlock.FACING, Direction.EAST);
-          case 2:
-            return Blocks.WALL_TORCH.getDefaultState().with(WallTorchBlock.FACING, Direction.WEST);
-          case 3:
-            return Blocks.WALL_TORCH.getDefaultState().with(WallTorchBlock.FACING, Direction.SOUTH);
-          case 4:
-            return Blocks.WALL_TORCH.getDefaultState().with(WallTorchBlock.FACING, Direction.NORTH);
-          default:
-            return Blocks.TORCH.getDefaultState();
-        }
-      case 51:
-        return Blocks.FIRE.getDefaultState();
-      case 53:
-        switch (subId) {
-          case 0:
-            return Blocks.OAK_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.EAST);
-          case 1:
-            return Blocks.OAK_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.WEST);
-          case 2:
-            return Blocks.OAK_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.SOUTH);
-          case 3:
-            return Blocks.OAK_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.NORTH);
-          case 4:
-            return Blocks.OAK_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.EAST).with(StairsBlock.HALF,
-                BlockHalf.TOP);
-          case 5:
-            return Blocks.OAK_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.WEST).with(StairsBlock.HALF,
-                BlockHalf.TOP);
-          case 6:
-            return Blocks.OAK_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.SOUTH).with(StairsBlock.HALF,
-                BlockHalf.TOP);
-          case 7:
-            return Blocks.OAK_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.NORTH).with(StairsBlock.HALF,
-                BlockHalf.TOP);
-          default:
-            return Blocks.OAK_STAIRS.getDefaultState();
-        }
-      case 54:
-        switch (subId) {
-          case 1:
-            return Blocks.CHEST.getDefaultState().with(ChestBlock.FACING, Direction.EAST);
-          case 2:
-            return Blocks.CHEST.getDefaultState().with(ChestBlock.FACING, Direction.WEST);
-          case 3:
-            return Blocks.CHEST.getDefaultState().with(ChestBlock.FACING, Direction.SOUTH);
-          case 4:
-            return Blocks.CHEST.getDefaultState().with(ChestBlock.FACING, Direction.NORTH);
-          default:
-            return Blocks.CHEST.getDefaultState();
-        }
-      case 56:
-        return Blocks.DIAMOND_ORE.getDefaultState();
-      case 57:
-        return Blocks.DIAMOND_BLOCK.getDefaultState();
-      case 58:
-        return Blocks.CRAFTING_TABLE.getDefaultState();
-      case 59:
-        return Blocks.WHEAT.getDefaultState();
-      case 60:
-        return Blocks.FARMLAND.getDefaultState();
-      case 61:
-        return Blocks.FARMLAND.getDefaultState(); // TODO: make inactive
-      case 62:
-        switch (subId) {
-          case 1:
-            return Blocks.FURNACE.getDefaultState().with(FurnaceBlock.FACING, Direction.EAST).with(FurnaceBlock.LIT,
-                true);
-          case 2:
-            return Blocks.FURNACE.getDefaultState().with(FurnaceBlock.FACING, Direction.WEST).with(FurnaceBlock.LIT,
-                true);
-          case 3:
-            return Blocks.FURNACE.getDefaultState().with(FurnaceBlock.FACING, Direction.SOUTH).with(FurnaceBlock.LIT,
-                true);
-          case 4:
-            return Blocks.FURNACE.getDefaultState().with(FurnaceBlock.FACING, Direction.NORTH).with(FurnaceBlock.LIT,
-                true);
-          default:
-            return Blocks.FURNACE.getDefaultState().with(FurnaceBlock.LIT, true);
-        }
-      case 63:
-        return Blocks.OAK_SIGN.getDefaultState();
-      case 64:
-        return Blocks.OAK_DOOR.getDefaultState();
-      case 65:
-        switch (subId) {
-          case 1:
-            return Blocks.LADDER.getDefaultState().with(LadderBlock.FACING, Direction.EAST);
-          case 2:
-            return Blocks.LADDER.getDefaultState().with(LadderBlock.FACING, Direction.WEST);
-          case 3:
-            return Blocks.LADDER.getDefaultState().with(LadderBlock.FACING, Direction.SOUTH);
-          case 4:
-            return Blocks.LADDER.getDefaultState().with(LadderBlock.FACING, Direction.NORTH);
-          default:
-            return Blocks.LADDER.getDefaultState();
-        }
-      case 67:
-        switch (subId) {
-          case 0:
-            return Blocks.COBBLESTONE_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.EAST);
-          case 1:
-            return Blocks.COBBLESTONE_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.WEST);
-          case 2:
-            return Blocks.COBBLESTONE_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.SOUTH);
-          case 3:
-            return Blocks.COBBLESTONE_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.NORTH);
-          case 4:
-            return Blocks.COBBLESTONE_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.EAST).with(
-                StairsBlock.HALF,
-                BlockHalf.TOP);
-          case 5:
-            return Blocks.COBBLESTONE_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.WEST).with(
-                StairsBlock.HALF,
-                BlockHalf.TOP);
-          case 6:
-            return Blocks.COBBLESTONE_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.SOUTH).with(
-                StairsBlock.HALF,
-                BlockHalf.TOP);
-          case 7:
-            return Blocks.COBBLESTONE_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.NORTH).with(
-                StairsBlock.HALF,
-                BlockHalf.TOP);
-          default:
-            return Blocks.COBBLESTONE_STAIRS.getDefaultState();
-        }
-      case 71:
-        return Blocks.IRON_DOOR.getDefaultState();
-      case 73:
-        return Blocks.REDSTONE_ORE.getDefaultState();
-      case 74:
-        return Blocks.REDSTONE_ORE.getDefaultState().with(RedstoneOreBlock.LIT, true);
-      case 78:
-        return Blocks.SNOW.getDefaultState();
-      case 79:
-        return Blocks.ICE.getDefaultState();
-      case 80:
-        return Blocks.SNOW_BLOCK.getDefaultState();
-      case 81:
-        return Blocks.CACTUS.getDefaultState();
-      case 82:
-        return Blocks.CLAY.getDefaultState();
-      case 83:
-        return Blocks.SUGAR_CANE.getDefaultState();
-      case 85:
-        return Blocks.OAK_FENCE.getDefaultState();
-      case 87:
-        return Blocks.NETHERRACK.getDefaultState();
-      case 89:
-        return Blocks.GLOWSTONE.getDefaultState();
-      case 95:
-        return Blocks.BARRIER.getDefaultState();
-      case 96:
-        return Blocks.OAK_TRAPDOOR.getDefaultState();
-      case 98:
-        switch (subId) {
-          case 0:
-            return Blocks.STONE_BRICKS.getDefaultState();
-          case 1:
-            return Blocks.MOSSY_STONE_BRICKS.getDefaultState();
-          case 2:
-            return Blocks.CRACKED_STONE_BRICKS.getDefaultState();
-          case 3:
-            return Blocks.CHISELED_STONE_BRICKS.getDefaultState();
-          default:
-            return Blocks.STONE_BRICKS.getDefaultState();
-        }
-      case 102:
-        return Blocks.GLASS_PANE.getDefaultState();
-      case 103:
-        return Blocks.MELON.getDefaultState();
-      case 105:
-        return Blocks.MELON_STEM.getDefaultState();
-      case 107:
-        return Blocks.OAK_FENCE_GATE.getDefaultState(); // TODO: implement facing
-      case 108:
-        return Blocks.STONE_BRICK_STAIRS.getDefaultState();
-      case 112:
-        return Blocks.NETHER_BRICKS.getDefaultState();
-      case 114:
-        return Blocks.NETHER_BRICK_STAIRS.getDefaultState();
-      case 128:
-        return Blocks.SANDSTONE_STAIRS.getDefaultState();
-      case 155:
-        return Blocks.QUARTZ_BLOCK.getDefaultState();
-      case 156:
-        return Blocks.QUARTZ_STAIRS.getDefaultState();
-      case 245:
-        return Blocks.STONECUTTER.getDefaultState();
-      case 246:
-        return Blocks.CRYING_OBSIDIAN.getDefaultState();
-      case 247:
-        return Blocks.NETHER_PORTAL.getDefaultState(); // Java Editition doesn't have a nether reactor core
-      default:
-        return Blocks.AIR.getDefaultState();
-    }
+  /** Runs the light updates deferred while in build mode */
+  private void endBuildMode(MinecraftServer server) {
+    deferredLight.forEach((key, positions) -> {
+      ServerWorld world = server.getWorld(key);
+      if (world != null) {
+        BuildMode.relight(world, positions);
+      }
+    });
+    deferredLight.clear();
   }
 
-  // Same as before. Is there a better way?
-  /// Turns ingame block states to api block ids
-  private int blockStateToBlockId(BlockState state) {
-    if (state.isOf(Blocks.AIR)) {
-      return 0;
-    } else if (state.isOf(Blocks.STONE)) {
-      return 1;
-    } else if (state.isOf(Blocks.GRASS_BLOCK)) {
-      return 2;
-    } else if (state.isOf(Blocks.DIRT)) {
-      return 3;
-    } else if (state.isOf(Blocks.COBBLESTONE)) {
-      return 4;
-    } else if (state.isOf(Blocks.OAK_PLANKS)) {
-      return 5;
-    } else if (state.isOf(Blocks.SPRUCE_PLANKS)) {
-      return 5;
-    } else if (state.isOf(Blocks.BIRCH_PLANKS)) {
-      return 5;
-    } else if (state.isOf(Blocks.OAK_SAPLING)) {
-      return 6;
-    } else if (state.isOf(Blocks.SPRUCE_SAPLING)) {
-      return 6;
-    } else if (state.isOf(Blocks.BIRCH_SAPLING)) {
-      return 6;
-    } else if (state.isOf(Blocks.BEDROCK)) {
-      return 7;
-    } else if (state.isOf(Blocks.WATER)) {
-      return 8;
-    } else if (state.isOf(Blocks.LAVA)) {
-      return 10;
-    } else if (state.isOf(Blocks.SAND)) {
-      return 12;
-    } else if (state.isOf(Blocks.GRAVEL)) {
-      return 13;
-    } else if (state.isOf(Blocks.GOLD_ORE)) {
-      return 14;
-    } else if (state.isOf(Blocks.IRON_ORE)) {
-      return 15;
-    } else if (state.isOf(Blocks.COAL_ORE)) {
-      return 16;
-    } else if (state.isOf(Blocks.OAK_WOOD)) {
-      return 17;
-    } else if (state.isOf(Blocks.OAK_LEAVES)) {
-      return 18;
-    } else if (state.isOf(Blocks.SPRUCE_LEAVES)) {
-      return 18;
-    } else if (state.isOf(Blocks.BIRCH_LEAVES)) {
-      return 18;
-    } else if (state.isOf(Blocks.GLASS)) {
-      return 20;
-    } else if (state.isOf(Blocks.LAPIS_ORE)) {
-      return 21;
-    } else if (state.isOf(Blocks.LAPIS_BLOCK)) {
-      return 22;
-    } else if (state.isOf(Blocks.SANDSTONE)) {
-      return 24;
-    } else if (state.isOf(Blocks.CHISELED_SANDSTONE)) {
-      return 24;
-    } else if (state.isOf(Blocks.SMOOTH_SANDSTONE)) {
-      return 24;
-    } else if (state.isOf(Blocks.RED_BED)) {
-      return 26;
-    } else if (state.isOf(Blocks.COBWEB)) {
-      return 30;
-    } else if (state.isOf(Blocks.DEAD_BUSH)) {
-      return 31;
-    } else if (state.isOf(Blocks.TALL_GRASS)) {
-      return 31;
-    } else if (state.isOf(Blocks.FERN)) {
-      return 31;
-    } else if (state.isOf(Blocks.WHITE_WOOL)) {
-      return 35;
-    } else if (state.isOf(Blocks.ORANGE_WOOL)) {
-      return 35;
-    } else if (state.isOf(Blocks.MAGENTA_WOOL)) {
-      return 35;
-    } else if (state.isOf(Blocks.LIGHT_BLUE_WOOL)) {
-      return 35;
-    } else if (state.isOf(Blocks.YELLOW_WOOL)) {
-      return 35;
-    } else if (state.isOf(Blocks.LIME_WOOL)) {
-      return 35;
-    } else if (state.isOf(Blocks.PINK_WOOL)) {
-      return 35;
-    } else if (state.isOf(Blocks.GRAY_WOOL)) {
-      return 35;
-    } else if (state.isOf(Blocks.LIGHT_GRAY_WOOL)) {
-      return 35;
-    } else if (state.isOf(Blocks.CYAN_WOOL)) {
-      return 35;
-    } else if (state.isOf(Blocks.PURPLE_WOOL)) {
-      return 35;
-    } else if (state.isOf(Blocks.BLUE_WOOL)) {
-      return 35;
-    } else if (state.isOf(Blocks.BROWN_WOOL)) {
-      return 35;
-    } else if (state.isOf(Blocks.GREEN_WOOL)) {
-      return 35;
-    } else if (state.isOf(Blocks.RED_WOOL)) {
-      return 35;
-    } else if (state.isOf(Blocks.BLACK_WOOL)) {
-      return 35;
-    } else if (state.isOf(Blocks.DANDELION)) {
-      return 37;
-    } else if (state.isOf(Blocks.CORNFLOWER)) {
-      return 38;
-    } else if (state.isOf(Blocks.BROWN_MUSHROOM)) {
-      return 39;
-    } else if (state.isOf(Blocks.RED_MUSHROOM)) {
-      return 40;
-    } else if (state.isOf(Blocks.GOLD_BLOCK)) {
-      return 41;
-    } else if (state.isOf(Blocks.IRON_BLOCK)) {
-      return 42;
-    } else if (state.isOf(Blocks.STONE_SLAB)) {
-      return 43;
-    } else if (state.isOf(Blocks.SANDSTONE_SLAB)) {
-      return 43;
-    } else if (state.isOf(Blocks.OAK_SLAB)) {
-      return 43;
-    } else if (state.isOf(Blocks.COBBLESTONE_SLAB)) {
-      return 43;
-    } else if (state.isOf(Blocks.BRICK_SLAB)) {
-      return 43;
-    } else if (state.isOf(Blocks.STONE_BRICK_SLAB)) {
-      return 43;
-    } else if (state.isOf(Blocks.BRICK_WALL)) {
-      return 45;
-    } else if (state.isOf(Blocks.TNT)) {
-      return 46;
-    } else if (state.isOf(Blocks.BOOKSHELF)) {
-      return 47;
-    } else if (state.isOf(Blocks.MOSSY_COBBLESTONE)) {
-      return 48;
-    } else if (state.isOf(Blocks.OBSIDIAN)) {
-      return 49;
-    } else if (state.isOf(Blocks.WALL_TORCH)) {
-      return 50;
-    } else if (state.isOf(Blocks.TORCH)) {
-      return 50;
-    } else if (state.isOf(Blocks.FIRE)) {
-      return 51;
-    } else if (state.isOf(Blocks.OAK_STAIRS)) {
-      return 53;
-    } else if (state.isOf(Blocks.CHEST)) {
-      return 54;
-    } else if (state.isOf(Blocks.DIAMOND_ORE)) {
-      return 56;
-    } else if (state.isOf(Blocks.DIAMOND_BLOCK)) {
-      return 57;
-    } else if (state.isOf(Blocks.CRAFTING_TABLE)) {
-      return 58;
-    } else if (state.isOf(Blocks.FARMLAND)) {
-      return 60;
-    } else if (state.isOf(Blocks.FURNACE)) {
-      return 62;
-    } else if (state.isOf(Blocks.OAK_DOOR)) {
-      return 64;
-    } else if (state.isOf(Blocks.LADDER)) {
-      return 65;
-    } else if (state.isOf(Blocks.COBBLESTONE_STAIRS)) {
-      return 67;
-    } else if (state.isOf(Blocks.IRON_DOOR)) {
-      return 71;
-    } else if (state.isOf(Blocks.REDSTONE_ORE)) {
-      return 73;
-    } else if (state.isOf(Blocks.SNOW)) {
-      return 78;
-    } else if (state.isOf(Blocks.ICE)) {
-      return 79;
-    } else if (state.isOf(Blocks.SNOW_BLOCK)) {
-      return 80;
-    } else if (state.isOf(Blocks.CACTUS)) {
-      return 81;
-    } else if (state.isOf(Blocks.CLAY)) {
-      return 82;
-    } else if (state.isOf(Blocks.SUGAR_CANE)) {
-      return 83;
-    } else if (state.isOf(Blocks.OAK_FENCE)) {
-      return 85;
-    } else if (state.isOf(Blocks.GLOWSTONE)) {
-      return 89;
-    } else if (state.isOf(Blocks.BARRIER)) {
-      return 95;
-    } else if (state.isOf(Blocks.STONE_BRICKS)) {
-      return 98;
-    } else if (state.isOf(Blocks.MOSSY_STONE_BRICKS)) {
-      return 98;
-    } else if (state.isOf(Blocks.CRACKED_STONE_BRICKS)) {
-      return 98;
-    } else if (state.isOf(Blocks.CHISELED_STONE_BRICKS)) {
-      return 98;
-    } else if (state.isOf(Blocks.GLASS_PANE)) {
-      return 102;
-    } else if (state.isOf(Blocks.MELON)) {
-      return 103;
-    } else if (state.isOf(Blocks.OAK_FENCE_GATE)) {
-      return 107;
-    } else if (state.isOf(Blocks.CRYING_OBSIDIAN)) {
-      return 246;
-    } else if (state.isOf(Blocks.NETHER_PORTAL)) {
-      return 247;
-    } else if (state.isOf(Blocks.CAVE_AIR)) {
-      return 0;
-    } else if (state.isOf(Blocks.VOID_AIR)) {
-      return 0;
-    }
-    return 1;
+  private RegistryKey<World> parseDimension(String id) {
+    return RegistryKey.of(RegistryKeys.WORLD, new Identifier(id.trim()));
   }
 
   private Entity getEntityFromId(ServerWorld world, int id) {
@@ -1182,6 +1279,65 @@ public class RemoteSession {
     return new BlockPos(x, y, z);
   }
 
+  /**
+   * Parses groups of arity numbers, separated by ";", into the reused batch
+   * buffer and returns the number of groups. Groups with another number of
+   * values or an invalid number are skipped, so they can't shift the values
+   * of the following groups.
+   */
+  private int parseBatch(String[] args, int arity) {
+    // Patch the groups back together as they were split at the commas before
+    String batch = String.join(",", args);
+    int groups = 0;
+    int skipped = 0;
+    int start = 0;
+    while (start < batch.length()) {
+      int end = batch.indexOf(';', start);
+      if (end < 0) {
+        end = batch.length();
+      }
+      if (end > start) {
+        if (parseGroup(batch, start, end, groups * arity, arity)) {
+          groups++;
+        } else {
+          skipped++;
+        }
+      }
+      start = end + 1;
+    }
+    if (skipped > 0) {
+      McpiMod.LOGGER.warn("*ERROR* remote session error: skipped " + skipped + " invalid groups, from " + address);
+    }
+    return groups;
+  }
+
+  private boolean parseGroup(String batch, int start, int end, int offset, int arity) {
+    if (offset + arity > batchBuffer.length) {
+      batchBuffer = Arrays.copyOf(batchBuffer, Math.max(batchBuffer.length * 2, offset + arity));
+    }
+    int count = 0;
+    while (start <= end) {
+      int comma = batch.indexOf(',', start);
+      if (comma < 0 || comma > end) {
+        comma = end;
+      }
+      if (count == arity) {
+        return false;
+      }
+      try {
+        batchBuffer[offset + count++] = Double.parseDouble(batch.substring(start, comma));
+      } catch (NumberFormatException e) {
+        return false;
+      }
+      start = comma + 1;
+    }
+    return count == arity;
+  }
+
+  private boolean parseBoolean(String arg) {
+    return arg.equals("1") || arg.equalsIgnoreCase("true");
+  }
+
   private Vec3d parsePos(String[] args) {
     double x = Double.parseDouble(args[0]);
     double y = Double.parseDouble(args[1]);
@@ -1189,27 +1345,119 @@ public class RemoteSession {
     return new Vec3d(x, y, z);
   }
 
-  private String serializePos(Vec3d pos) {
-    return pos.x + "," + pos.y + "," + pos.z;
+  private ResponseWriter appendPos(ResponseWriter out, Vec3d pos) {
+    return out.append(pos.x).append(',').append(pos.y).append(',').append(pos.z);
+  }
+
+  /** Starts a new response, which is sent with {@link #send(ResponseWriter)} */
+  private ResponseWriter response() {
+    return response.reset();
   }
 
-  private void send(Object a) {
-    send(a.toString());
+  private void send(ResponseWriter out) {
+    send(out.toLine());
   }
 
   private void send(String a) {
+    send(response().append(a));
+  }
+
+  private void send(byte[] line) {
     if (pendingRemoval)
       return;
-    synchronized (outQueue) {
-      outQueue.add(a);
+    responses.send(line);
+  }
+
+  /** Answers a read only query on a worker thread, see {@link ResponseQueue#sendAsync} */
+  private void sendAsync(Consumer<ResponseWriter> query) {
+    if (pendingRemoval)
+      return;
+    responses.sendAsync(query);
+  }
+
+  private void reportResponseError(Throwable e) {
+    McpiMod.LOGGER.warn("*ERROR* response failed, from " + address);
+    e.printStackTrace();
+  }
+
+  public String getAddress() {
+    return address;
+  }
+
+  /** The IP address of the client, without the port */
+  public String getHostAddress() {
+    return socket.getInetAddress().getHostAddress();
+  }
+
+  public long getBytesIn() {
+    return bytesIn.get();
+  }
+
+  public long getBytesOut() {
+    return bytesOut.get();
+  }
+
+  /**
+   * Whether nothing was received for the timeout, no command or task is left
+   * and every response was written. Called by the reaper thread.
+   */
+  public boolean isIdle(long timeoutNanos) {
+    return running && System.nanoTime() - lastReceived > timeoutNanos && commands.isEmpty() && task == null
+        && responses.size() == 0;
+  }
+
+  /**
+   * Runs the light updates still deferred by the build mode, for sessions
+   * closed while the server stops. Called on the server thread.
+   */
+  public void finish(MinecraftServer server) {
+    if (buildMode) {
+      endBuildMode(server);
+      buildMode = false;
+    }
+  }
+
+  /**
+   * Ends the connection from another thread. The session then finishes on
+   * the server thread like after the client closed the connection.
+   */
+  public void disconnect() {
+    running = false;
+    try {
+      socket.close();
+    } catch (IOException e) {
+      e.printStackTrace();
     }
   }
 
+  /**
+   * Stops the threads and closes the socket, which can take a while, so
+   * it is called by the {@link SessionReaper} instead of the server thread,
+   * unless the server stops
+   */
   public void close() {
-    if (closed)
-      return;
+    // under the monitor of startRecording, so no recording starts after the
+    // stopRecording below
+    synchronized (this) {
+      if (closed)
+        return;
+      closed = true;
+    }
     running = false;
     pendingRemoval = true;
+    responses.close();
+    // wakes up the output thread if it waits for a slice
+    streamedSnapshots.forEach(SliceSnapshot::cancel);
+    streamedSnapshots.clear();
+
+    // closing the socket wakes up the input thread blocked in readLine
+    try {
+      socket.close();
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+    // and this one waiting for the bytes per second limit
+    inThread.interrupt();
 
     // wait for threads to stop
     try {
@@ -1220,12 +1468,76 @@ public class RemoteSession {
       e.printStackTrace();
     }
 
+    limiter.release();
+
+    stopRecording();
+
+    McpiMod.LOGGER.info("Closed connection to" + socket.getRemoteSocketAddress() + ".");
+  }
+
+  /** Starts recording the received lines, returns false if the session is recorded already */
+  public synchronized boolean startRecording() {
+    if (recorder != null || closed) {
+      return false;
+    }
     try {
-      socket.close();
-    } catch (Exception e) {
+      recorder = TrafficRecorder.create(address);
+      return true;
+    } catch (IOException e) {
+      McpiMod.LOGGER.warn("*ERROR* Failed to start recording " + address);
       e.printStackTrace();
+      return false;
+    }
+  }
+
+  /** Stops recording, returns false if the session wasn't recorded */
+  public synchronized boolean stopRecording() {
+    TrafficRecorder r = recorder;
+    recorder = null;
+    if (r == null) {
+      return false;
+    }
+    try {
+      r.close();
+    } catch (IOException e) {
+      McpiMod.LOGGER.warn("*ERROR* Failed to close recording of " + address);
+      e.printStackTrace();
+    }
+    return true;
+  }
+
+  /** Called by the input thread, stops recording once the file is full or can't be written */
+  private void record(TrafficRecorder r, String line, long receivedAt) {
+    try {
+      if (!r.record(TrafficRecorder.currentTick, receivedAt, line)) {
+        if (recorder == r) {
+          McpiMod.LOGGER.warn("Recording of " + address + " reached " + TrafficRecorder.MAX_SIZE_MB
+              + " MB, recording stopped");
+        }
+        stopRecording(r);
+      }
+    } catch (IOException e) {
+      McpiMod.LOGGER.warn("*ERROR* Failed to record " + address + ", recording stopped");
+      e.printStackTrace();
+      stopRecording(r);
+    }
+  }
+
+  /** Stops the recording unless it was replaced in the meantime */
+  private synchronized void stopRecording(TrafficRecorder r) {
+    if (recorder == r) {
+      stopRecording();
+    }
+  }
+
+  private static class QueryThreadFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger();
+
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "mcpimod-query-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
     }
-    McpiMod.LOGGER.info("Closed connection to" + socket.getRemoteSocketAddress() + ".");
   }
 
   // Code from:
@@ -1241,7 +1553,13 @@ public class RemoteSession {
           if (newLine == null) {
             running = false;
           } else {
-            inQueue.add(newLine);
+            long receivedAt = System.nanoTime();
+            lastReceived = receivedAt;
+            commands.add(newLine, receivedAt);
+            TrafficRecorder r = recorder;
+            if (r != null) {
+              record(r, newLine, receivedAt);
+            }
             // System.out.println("Added to in queue");
           }
         } catch (Exception e) {
@@ -1271,14 +1589,12 @@ public class RemoteSession {
       McpiMod.LOGGER.info("Starting output thread!");
       while (running) {
         try {
-          String line;
-          while ((line = outQueue.poll()) != null) {
-            out.write(line);
-            out.write('\n');
+          // blocks until there is something to send, instead of polling
+          if (!responses.await()) {
+            break;
           }
+          bytesOut.addAndGet(responses.writeTo(out));
           out.flush();
-          Thread.yield();
-          Thread.sleep(1L);
         } catch (Exception e) {
           // if its running raise an error
           if (running) {
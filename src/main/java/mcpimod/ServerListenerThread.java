@@ -29,23 +29,59 @@ import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+import mcpimod.core.RateLimiter;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.GameRules;
 
 public class ServerListenerThread implements Runnable {
 
+  /**
+   * Connections over this many open sessions are answered with "Fail" and
+   * closed, 0 means no limit
+   */
+  public static int MAX_SESSIONS = 0;
+
+  /**
+   * Connections the operating system queues until they are accepted, only
+   * used when the listener starts
+   */
+  public static int ACCEPT_BACKLOG = 50;
+
+  public static final LongAdder REJECTED_CONNECTIONS = new LongAdder();
+
   public ServerSocket serverSocket;
 
   public SocketAddress bindAddress;
 
-  public boolean running = true;
+  public volatile boolean running = true;
 
   private McpiMod mod;
 
+  public static void setMaxSessions(MinecraftServer _server, GameRules.IntRule rule) {
+    MAX_SESSIONS = rule.get();
+  }
+
   public ServerListenerThread(McpiMod mod, SocketAddress bindAddress) throws IOException {
     this.mod = mod;
     this.bindAddress = bindAddress;
     serverSocket = new ServerSocket();
     serverSocket.setReuseAddress(true);
-    serverSocket.bind(bindAddress);
+    serverSocket.bind(bindAddress, ACCEPT_BACKLOG);
+  }
+
+  /** Stops accepting connections, the open sessions stay */
+  public void stop() {
+    running = false;
+    try {
+      // wakes up accept
+      serverSocket.close();
+    } catch (IOException e) {
+      McpiMod.LOGGER.warn("*ERROR* closing server socket");
+      e.printStackTrace();
+    }
   }
 
   @Override
@@ -53,9 +89,22 @@ public class ServerListenerThread implements Runnable {
     while (running) {
       try {
         Socket newConnection = serverSocket.accept();
-        if (!running)
+        if (!running) {
+          newConnection.close();
           return;
-        mod.handleConnection(new RemoteSession(newConnection));
+        }
+        if (MAX_SESSIONS > 0 && mod.sessions.size() >= MAX_SESSIONS) {
+          reject(newConnection);
+          continue;
+        }
+        // sessions from the same address share their rate limits
+        RateLimiter limiter = RateLimiter.admit(newConnection.getInetAddress().getHostAddress());
+        try {
+          mod.handleConnection(new RemoteSession(newConnection, limiter));
+        } catch (Exception e) {
+          limiter.release();
+          throw e;
+        }
       } catch (Exception e) {
         if (running) {
           McpiMod.LOGGER.warn("*ERROR* creating new connection");
@@ -71,4 +120,15 @@ public class ServerListenerThread implements Runnable {
     }
   }
 
+  private void reject(Socket connection) {
+    REJECTED_CONNECTIONS.increment();
+    McpiMod.LOGGER.warn("Rejected connection from " + connection.getRemoteSocketAddress() + ", already "
+        + MAX_SESSIONS + " sessions open");
+    try (connection) {
+      connection.getOutputStream().write("Fail\n".getBytes(StandardCharsets.US_ASCII));
+    } catch (IOException e) {
+      // the client is gone already
+    }
+  }
+
 }
@@ -0,0 +1,77 @@
+package mcpimod;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.GameRules;
+
+/**
+ * Closes finished sessions and disconnects idle ones on its own thread, so
+ * waiting for the socket threads of a session never blocks the server thread.
+ */
+public class SessionReaper {
+
+  /** Seconds without a received line after which a session is disconnected, 0 turns it off */
+  public static int IDLE_TIMEOUT_SECONDS = 0;
+
+  public static final LongAdder IDLE_DISCONNECTS = new LongAdder();
+
+  private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "mcpimod-reaper");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private static ScheduledFuture<?> idleCheck = null;
+
+  public static void setIdleTimeout(MinecraftServer _server, GameRules.IntRule rule) {
+    IDLE_TIMEOUT_SECONDS = rule.get();
+  }
+
+  /** Checks the sessions for idle ones once per second */
+  public static synchronized void start(Supplier<List<RemoteSession>> sessions) {
+    stop();
+    idleCheck = EXECUTOR.scheduleWithFixedDelay(() -> disconnectIdle(sessions.get()), 1, 1, TimeUnit.SECONDS);
+  }
+
+  public static synchronized void stop() {
+    if (idleCheck != null) {
+      idleCheck.cancel(false);
+      idleCheck = null;
+    }
+  }
+
+  /** Closes a session which was removed from the session list */
+  public static void close(RemoteSession session) {
+    EXECUTOR.execute(session::close);
+  }
+
+  private static void disconnectIdle(List<RemoteSession> sessions) {
+    if (IDLE_TIMEOUT_SECONDS <= 0) {
+      return;
+    }
+    long timeout = IDLE_TIMEOUT_SECONDS * 1_000_000_000L;
+    for (RemoteSession session : sessions) {
+      try {
+        if (session.isIdle(timeout)) {
+          McpiMod.LOGGER.info("Disconnecting " + session.getAddress() + " after " + IDLE_TIMEOUT_SECONDS
+              + " s without a command");
+          IDLE_DISCONNECTS.increment();
+          // the session finishes on the server thread and then comes back here to be closed
+          session.disconnect();
+        }
+      } catch (Exception e) {
+        // an exception would cancel the periodic check
+        McpiMod.LOGGER.warn("*ERROR* checking session " + session.getAddress() + " for idleness");
+        e.printStackTrace();
+      }
+    }
+  }
+
+}
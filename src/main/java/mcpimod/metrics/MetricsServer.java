@@ -0,0 +1,152 @@
+package mcpimod.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import mcpimod.McpiMod;
+import mcpimod.RemoteSession;
+import mcpimod.ServerListenerThread;
+import mcpimod.SessionReaper;
+import mcpimod.core.RateLimiter;
+import mcpimod.utils.ChunkPreloader;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.GameRules;
+
+/**
+ * Serves the metrics in the Prometheus text format on
+ * {@code http://127.0.0.1:<mcpiMetricsPort>/metrics}. Port 0 turns it off.
+ */
+public class MetricsServer {
+
+  private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+  private static Supplier<List<RemoteSession>> sessions = List::of;
+  private static HttpServer server = null;
+  private static int port = 0;
+
+  public static void init(Supplier<List<RemoteSession>> sessions) {
+    MetricsServer.sessions = sessions;
+  }
+
+  public static void setPort(MinecraftServer _server, GameRules.IntRule rule) {
+    start(rule.get());
+  }
+
+  /** Starts the server on the given port, restarting it if the port changed */
+  public static synchronized void start(int newPort) {
+    if (server != null && newPort == port) {
+      return;
+    }
+    stop();
+    port = newPort;
+    if (port == 0) {
+      return;
+    }
+
+    try {
+      server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+      server.createContext("/metrics", MetricsServer::handle);
+      server.start();
+      McpiMod.LOGGER.info("Metrics available at http://127.0.0.1:" + port + "/metrics");
+    } catch (IOException e) {
+      McpiMod.LOGGER.warn("*ERROR* failed to start the metrics server on port " + port);
+      e.printStackTrace();
+      server = null;
+    }
+  }
+
+  public static synchronized void stop() {
+    if (server != null) {
+      server.stop(0);
+      server = null;
+    }
+  }
+
+  private static void handle(HttpExchange exchange) throws IOException {
+    byte[] body = render().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private static String render() {
+    StringBuilder out = new StringBuilder();
+    Map<String, CommandMetrics.CommandStats> commands = CommandMetrics.getCommands();
+
+    header(out, "mcpi_command_duration_seconds", "summary",
+        "Time spent executing remote commands on the server thread");
+    commands.forEach((name, stats) -> summary(out, "mcpi_command_duration_seconds", name, stats.execution));
+
+    header(out, "mcpi_command_queue_wait_seconds", "summary",
+        "Time between receiving a remote command and executing it");
+    commands.forEach((name, stats) -> summary(out, "mcpi_command_queue_wait_seconds", name, stats.queueWait));
+
+    header(out, "mcpi_limited_ticks_total", "counter", "Ticks in which a session reached mcpiMaxCommandsPerTick");
+    out.append("mcpi_limited_ticks_total ").append(CommandMetrics.LIMITED_TICKS.sum()).append('\n');
+
+    header(out, "mcpi_rate_limit_delayed_ticks_total", "counter",
+        "Ticks in which a session waited for its rate limits");
+    out.append("mcpi_rate_limit_delayed_ticks_total ").append(RateLimiter.DELAYED_TICKS.sum()).append('\n');
+    header(out, "mcpi_rate_limit_rejected_total", "counter", "Commands rejected over the rate limits");
+    out.append("mcpi_rate_limit_rejected_total ").append(RateLimiter.REJECTED.sum()).append('\n');
+
+    header(out, "mcpi_rejected_connections_total", "counter", "Connections rejected over mcpiMaxSessions");
+    out.append("mcpi_rejected_connections_total ").append(ServerListenerThread.REJECTED_CONNECTIONS.sum())
+        .append('\n');
+    header(out, "mcpi_idle_disconnects_total", "counter", "Sessions disconnected after mcpiIdleTimeout");
+    out.append("mcpi_idle_disconnects_total ").append(SessionReaper.IDLE_DISCONNECTS.sum()).append('\n');
+
+    List<RemoteSession> current = sessions.get();
+    header(out, "mcpi_sessions", "gauge", "Open remote sessions");
+    out.append("mcpi_sessions ").append(current.size()).append('\n');
+
+    header(out, "mcpi_session_received_bytes_total", "counter", "Bytes received from a session");
+    for (RemoteSession session : current) {
+      out.append("mcpi_session_received_bytes_total{session=\"").append(escape(session.getAddress())).append("\"} ")
+          .append(session.getBytesIn()).append('\n');
+    }
+    header(out, "mcpi_session_sent_bytes_total", "counter", "Bytes sent to a session");
+    for (RemoteSession session : current) {
+      out.append("mcpi_session_sent_bytes_total{session=\"").append(escape(session.getAddress())).append("\"} ")
+          .append(session.getBytesOut()).append('\n');
+    }
+
+    header(out, "mcpi_chunk_preload_parked_commands_total", "counter", "Commands which waited for chunks to load");
+    out.append("mcpi_chunk_preload_parked_commands_total ").append(ChunkPreloader.PARKED_COMMANDS.get()).append('\n');
+    header(out, "mcpi_chunk_preload_timeouts_total", "counter", "Chunk preloads which timed out");
+    out.append("mcpi_chunk_preload_timeouts_total ").append(ChunkPreloader.TIMEOUTS.get()).append('\n');
+
+    return out.toString();
+  }
+
+  private static void header(StringBuilder out, String name, String type, String help) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void summary(StringBuilder out, String name, String command, LatencyHistogram histogram) {
+    String label = "command=\"" + escape(command) + "\"";
+    for (double quantile : QUANTILES) {
+      out.append(name).append('{').append(label).append(",quantile=\"").append(quantile).append("\"} ")
+          .append(histogram.getPercentile(quantile) / 1e9).append('\n');
+    }
+    out.append(name).append("_sum{").append(label).append("} ").append(histogram.getSum() / 1e9).append('\n');
+    out.append(name).append("_count{").append(label).append("} ").append(histogram.getCount()).append('\n');
+  }
+
+  private static String escape(String label) {
+    return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+}
@@ -0,0 +1,119 @@
+package mcpimod.metrics;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import mcpimod.McpiMod;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.GameRules;
+
+/**
+ * Logs commands which took longer than mcpiSlowCommandMs. Entries are
+ * formatted and logged by a background thread and at most MAX_PER_SECOND
+ * are logged, so a flood of slow commands can't stall the tick any further.
+ */
+public class SlowCommandLog {
+
+  /** 0 turns the log off */
+  public static int THRESHOLD_MS = 50;
+
+  private static final int MAX_PER_SECOND = 10;
+  private static final int MAX_ARGS_LENGTH = 80;
+
+  // commands starting with two corners, their summary is the region size
+  private static final Set<String> REGION_COMMANDS = Set.of("world.setBlocks", "world.getBlocks",
+      "world.replaceBlocks", "world.exportRegion", "world.getEntities");
+
+  private static class Entry {
+    private final String session;
+    private final String command;
+    private final String[] args;
+    private final long nanos;
+    // entries dropped by the rate limit since the last one logged
+    private final int suppressed;
+
+    private Entry(String session, String command, String[] args, long nanos, int suppressed) {
+      this.session = session;
+      this.command = command;
+      this.args = args;
+      this.nanos = nanos;
+      this.suppressed = suppressed;
+    }
+  }
+
+  private static final BlockingQueue<Entry> QUEUE = new ArrayBlockingQueue<>(64);
+
+  // rate limit, only used on the server thread
+  private static long windowStart = 0;
+  private static int windowCount = 0;
+  private static int suppressed = 0;
+
+  static {
+    Thread thread = new Thread(SlowCommandLog::run, "mcpimod-slow-log");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public static void setThresholdMs(MinecraftServer _server, GameRules.IntRule rule) {
+    THRESHOLD_MS = rule.get();
+  }
+
+  public static void record(String session, String command, String[] args, long nanos) {
+    if (THRESHOLD_MS <= 0 || nanos < THRESHOLD_MS * 1_000_000L) {
+      return;
+    }
+
+    long now = System.nanoTime();
+    if (now - windowStart >= 1_000_000_000L) {
+      windowStart = now;
+      windowCount = 0;
+    }
+    if (windowCount >= MAX_PER_SECOND || !QUEUE.offer(new Entry(session, command, args, nanos, suppressed))) {
+      suppressed++;
+      return;
+    }
+    windowCount++;
+    suppressed = 0;
+  }
+
+  private static void run() {
+    while (true) {
+      try {
+        Entry entry = QUEUE.take();
+        if (entry.suppressed > 0) {
+          McpiMod.LOGGER.warn(entry.suppressed + " slow commands were not logged");
+        }
+        McpiMod.LOGGER.warn("Slow command: " + entry.command + "(" + summarizeArgs(entry.command, entry.args)
+            + ") took " + CommandMetrics.formatMillis(entry.nanos) + ", from " + entry.session);
+      } catch (InterruptedException e) {
+        return;
+      } catch (Exception e) {
+        McpiMod.LOGGER.warn("*ERROR* failed to log slow command");
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /** Shortens the arguments, region commands are described by their size */
+  private static String summarizeArgs(String command, String[] args) {
+    if (REGION_COMMANDS.contains(command) && args.length >= 6) {
+      try {
+        long sizeX = Math.abs((long) Double.parseDouble(args[3]) - (long) Double.parseDouble(args[0])) + 1;
+        long sizeY = Math.abs((long) Double.parseDouble(args[4]) - (long) Double.parseDouble(args[1])) + 1;
+        long sizeZ = Math.abs((long) Double.parseDouble(args[5]) - (long) Double.parseDouble(args[2])) + 1;
+        return args[0] + "," + args[1] + "," + args[2] + ", " + sizeX + "x" + sizeY + "x" + sizeZ + " = "
+            + sizeX * sizeY * sizeZ + " blocks" + (args.length > 6 ? ", ..." : "");
+      } catch (NumberFormatException e) {
+        // fall back to the raw arguments
+      }
+    }
+
+    String joined = String.join(",", args);
+    if (joined.length() <= MAX_ARGS_LENGTH) {
+      return joined;
+    }
+    return joined.substring(0, MAX_ARGS_LENGTH) + "... " + args.length + " args";
+  }
+
+}
@@ -0,0 +1,129 @@
+package mcpimod.metrics;
+
+import java.util.Comparator;
+import java.util.List;
+
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+
+/**
+ * Measures how much of each server tick went into remote sessions, by
+ * session and by command type, for the last HISTORY_TICKS ticks. Only used
+ * on the server thread.
+ */
+public class TickProfiler {
+
+  public static final int HISTORY_TICKS = 200;
+
+  private static final int MAX_COMMAND_TYPES = 256;
+
+  private static class TickRecord {
+    private long tickNanos;
+    private long sessionNanos;
+    private final Object2LongOpenHashMap<String> bySession = new Object2LongOpenHashMap<>();
+    private final Object2LongOpenHashMap<String> byCommand = new Object2LongOpenHashMap<>();
+  }
+
+  private static final TickRecord[] HISTORY = new TickRecord[HISTORY_TICKS];
+
+  static {
+    for (int i = 0; i < HISTORY_TICKS; i++) {
+      HISTORY[i] = new TickRecord();
+    }
+  }
+
+  private static int next = 0;
+  private static TickRecord current = null;
+  private static long tickStart;
+
+  public static void startTick() {
+    current = HISTORY[next];
+    next = (next + 1) % HISTORY_TICKS;
+    current.tickNanos = 0;
+    current.sessionNanos = 0;
+    current.bySession.clear();
+    current.byCommand.clear();
+    tickStart = System.nanoTime();
+  }
+
+  public static void endTick() {
+    if (current != null) {
+      current.tickNanos = System.nanoTime() - tickStart;
+      current = null;
+    }
+  }
+
+  /**
+   * Time a session spent executing its queue in one world, or capturing the
+   * snapshots of its streamed answers
+   */
+  public static void recordSession(String session, long nanos) {
+    if (current != null) {
+      current.sessionNanos += nanos;
+      current.bySession.addTo(session, nanos);
+    }
+  }
+
+  /** Time spent in one command, also counted in the time of its session */
+  public static void recordCommand(String command, long nanos) {
+    if (current != null) {
+      if (current.byCommand.size() >= MAX_COMMAND_TYPES && !current.byCommand.containsKey(command)) {
+        command = CommandMetrics.OTHER;
+      }
+      current.byCommand.addTo(command, nanos);
+    }
+  }
+
+  public static class Summary {
+    public final int ticks;
+    public final long tickNanos;
+    public final long sessionNanos;
+    public final List<Object2LongMap.Entry<String>> topSessions;
+    public final List<Object2LongMap.Entry<String>> topCommands;
+
+    private Summary(int ticks, long tickNanos, long sessionNanos, List<Object2LongMap.Entry<String>> topSessions,
+        List<Object2LongMap.Entry<String>> topCommands) {
+      this.ticks = ticks;
+      this.tickNanos = tickNanos;
+      this.sessionNanos = sessionNanos;
+      this.topSessions = topSessions;
+      this.topCommands = topCommands;
+    }
+
+    /** Percentage of the tick time spent in remote sessions */
+    public double getSessionPercent() {
+      return tickNanos == 0 ? 0 : 100.0 * sessionNanos / tickNanos;
+    }
+  }
+
+  /** Sums up the finished ticks in the history */
+  public static Summary summarize(int limit) {
+    int ticks = 0;
+    long tickNanos = 0;
+    long sessionNanos = 0;
+    Object2LongOpenHashMap<String> bySession = new Object2LongOpenHashMap<>();
+    Object2LongOpenHashMap<String> byCommand = new Object2LongOpenHashMap<>();
+
+    for (TickRecord record : HISTORY) {
+      // unused records and the running tick
+      if (record.tickNanos == 0) {
+        continue;
+      }
+      ticks++;
+      tickNanos += record.tickNanos;
+      sessionNanos += record.sessionNanos;
+      record.bySession.object2LongEntrySet().fastForEach(e -> bySession.addTo(e.getKey(), e.getLongValue()));
+      record.byCommand.object2LongEntrySet().fastForEach(e -> byCommand.addTo(e.getKey(), e.getLongValue()));
+    }
+
+    return new Summary(ticks, tickNanos, sessionNanos, top(bySession, limit), top(byCommand, limit));
+  }
+
+  private static List<Object2LongMap.Entry<String>> top(Object2LongOpenHashMap<String> totals, int limit) {
+    return totals.object2LongEntrySet().stream()
+        .sorted(Comparator.comparingLong((Object2LongMap.Entry<String> e) -> e.getLongValue()).reversed())
+        .limit(limit)
+        .toList();
+  }
+
+}
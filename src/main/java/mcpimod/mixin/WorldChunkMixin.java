@@ -0,0 +1,54 @@
+package mcpimod.mixin;
+
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+import com.llamalad7.mixinextras.injector.WrapWithCondition;
+
+import mcpimod.utils.BlockIdCache;
+import mcpimod.utils.BuildMode;
+import mcpimod.utils.ChangeTracker;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.WorldChunk;
+import net.minecraft.world.chunk.light.LightingProvider;
+
+/** Hooks into every block change of loaded chunks */
+@Mixin(WorldChunk.class)
+public abstract class WorldChunkMixin {
+
+  @Inject(method = "setBlockState", at = @At("RETURN"))
+  private void mcpimod$onSetBlockState(BlockPos pos, BlockState state, boolean moved,
+      CallbackInfoReturnable<BlockState> cir) {
+    // null is returned when nothing was changed
+    if (cir.getReturnValue() == null) {
+      return;
+    }
+    World world = ((WorldChunk) (Object) this).getWorld();
+    if (!world.isClient) {
+      // both return right away until a session used the block cache or the change feed
+      BlockIdCache.invalidate(world, pos);
+      ChangeTracker.markChanged(world, pos);
+    }
+  }
+
+  // build mode writes collect their light checks and run them in one pass later
+  @WrapWithCondition(method = "setBlockState", at = @At(value = "INVOKE",
+      target = "Lnet/minecraft/world/chunk/light/LightingProvider;checkBlock(Lnet/minecraft/util/math/BlockPos;)V"))
+  private boolean mcpimod$checkLight(LightingProvider lightingProvider, BlockPos pos) {
+    return !BuildMode.deferLightCheck(pos);
+  }
+
+  // build mode writes don't schedule ticks, so sand doesn't fall and water doesn't flow
+  @WrapWithCondition(method = "setBlockState", at = @At(value = "INVOKE",
+      target = "Lnet/minecraft/block/BlockState;onBlockAdded"
+          + "(Lnet/minecraft/world/World;Lnet/minecraft/util/math/BlockPos;Lnet/minecraft/block/BlockState;Z)V"))
+  private boolean mcpimod$onBlockAdded(BlockState state, World world, BlockPos pos, BlockState oldState,
+      boolean moved) {
+    return !BuildMode.isActive();
+  }
+
+}
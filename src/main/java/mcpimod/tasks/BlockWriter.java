@@ -0,0 +1,12 @@
+package mcpimod.tasks;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+
+/** The write path of a session, so tasks respect its build mode */
+public interface BlockWriter {
+
+  void setBlockState(ServerWorld world, BlockPos pos, BlockState state);
+
+}
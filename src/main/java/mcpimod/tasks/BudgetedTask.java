@@ -0,0 +1,19 @@
+package mcpimod.tasks;
+
+import net.minecraft.server.world.ServerWorld;
+
+/**
+ * Work on the world which is too large for a single tick. The session runs
+ * it over as many ticks as needed before it executes its next command.
+ */
+public interface BudgetedTask {
+
+  /**
+   * Does about as much work as the budget allows (roughly one unit per block
+   * visited) and returns the units actually used.
+   */
+  int run(ServerWorld world, int budget);
+
+  boolean isDone();
+
+}
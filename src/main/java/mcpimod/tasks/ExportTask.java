@@ -0,0 +1,120 @@
+package mcpimod.tasks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import mcpimod.utils.ChunkPreloader;
+import mcpimod.utils.RegionCodec;
+import net.minecraft.block.BlockState;
+import net.minecraft.command.argument.BlockArgumentParser;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.chunk.WorldChunk;
+
+/**
+ * Streams a region in the {@link RegionCodec} format, one data line at a
+ * time, so only the palette is kept in memory. The task waits while the
+ * client is behind on reading and while the chunks of the next line load.
+ */
+public class ExportTask implements BudgetedTask {
+
+  /** Responses of the session waiting to be written at most, about 6 KB each */
+  public static final int MAX_QUEUED_LINES = 64;
+
+  private final Consumer<String> out;
+  private final IntSupplier queued;
+
+  private final int minX, minY, minZ;
+  private final int sizeX, sizeY, sizeZ;
+  private final long total;
+
+  private final Reference2IntOpenHashMap<BlockState> palette = new Reference2IntOpenHashMap<>();
+  private final int[] indices = new int[RegionCodec.BLOCKS_PER_LINE];
+
+  private long cursor = -1;
+
+  public ExportTask(Consumer<String> out, IntSupplier queued, BlockPos pos1, BlockPos pos2) {
+    this.out = out;
+    this.queued = queued;
+    this.minX = Math.min(pos1.getX(), pos2.getX());
+    this.minY = Math.min(pos1.getY(), pos2.getY());
+    this.minZ = Math.min(pos1.getZ(), pos2.getZ());
+    this.sizeX = Math.max(pos1.getX(), pos2.getX()) - minX + 1;
+    this.sizeY = Math.max(pos1.getY(), pos2.getY()) - minY + 1;
+    this.sizeZ = Math.max(pos1.getZ(), pos2.getZ()) - minZ + 1;
+    this.total = (long) sizeX * sizeY * sizeZ;
+  }
+
+  @Override
+  public int run(ServerWorld world, int budget) {
+    if (cursor < 0) {
+      out.accept(sizeX + "," + sizeY + "," + sizeZ);
+      cursor = 0;
+    }
+
+    int used = 0;
+    BlockPos.Mutable pos = new BlockPos.Mutable();
+    WorldChunk chunk = null;
+    while (!isDone() && used < budget && queued.getAsInt() < MAX_QUEUED_LINES) {
+      int count = (int) Math.min(RegionCodec.BLOCKS_PER_LINE, total - cursor);
+      if (!isLoaded(world, count)) {
+        break;
+      }
+      List<String> newEntries = new ArrayList<>();
+
+      for (int i = 0; i < count; i++, cursor++) {
+        int x = minX + (int) (cursor / ((long) sizeY * sizeZ));
+        int z = minZ + (int) (cursor / sizeY % sizeZ);
+        int y = minY + (int) (cursor % sizeY);
+
+        if (chunk == null || chunk.getPos().x != x >> 4 || chunk.getPos().z != z >> 4) {
+          chunk = world.getChunk(x >> 4, z >> 4);
+        }
+        BlockState state = chunk.getBlockState(pos.set(x, y, z));
+
+        int index = palette.getOrDefault(state, -1);
+        if (index < 0) {
+          index = palette.size();
+          palette.put(state, index);
+          newEntries.add(BlockArgumentParser.stringifyBlockState(state));
+        }
+        indices[i] = index;
+      }
+
+      out.accept(RegionCodec.encodeLine(newEntries, indices, count));
+      used += count;
+    }
+
+    if (isDone()) {
+      out.accept(RegionCodec.END);
+    }
+    return used;
+  }
+
+  /** Checks the chunks of the next count blocks, adding tickets for the missing ones */
+  private boolean isLoaded(ServerWorld world, int count) {
+    boolean loaded = true;
+    long lastChunk = Long.MIN_VALUE;
+    // the blocks are ordered by column, so only every column has to be checked
+    for (long column = cursor / sizeY; column <= (cursor + count - 1) / sizeY; column++) {
+      int x = minX + (int) (column / sizeZ);
+      int z = minZ + (int) (column % sizeZ);
+      long chunk = ChunkPos.toLong(x >> 4, z >> 4);
+      if (chunk != lastChunk) {
+        lastChunk = chunk;
+        loaded &= ChunkPreloader.isLoaded(world, x >> 4, z >> 4);
+      }
+    }
+    return loaded;
+  }
+
+  @Override
+  public boolean isDone() {
+    return cursor >= total;
+  }
+
+}
@@ -0,0 +1,91 @@
+package mcpimod.tasks;
+
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import mcpimod.utils.BlockIds;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.world.GameRules;
+
+/**
+ * Replaces the connected blocks sharing the api id of the start block,
+ * up to a maximum number of blocks. Unloaded chunks are never entered.
+ */
+public class FloodFillTask implements BudgetedTask {
+
+  /** The most blocks one flood fill may replace, synced with the gamerule */
+  public static int MAX_BLOCKS = 1_000_000;
+
+  private final BlockWriter writer;
+  private final BlockState to;
+  private final int maxBlocks;
+
+  private final LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
+  /** The blocks filled or queued, never more than maxBlocks */
+  private final LongOpenHashSet visited = new LongOpenHashSet();
+
+  private final BlockPos start;
+  private int fromId = -1;
+  private int filled = 0;
+
+  /** maxBlocks is limited to {@link #MAX_BLOCKS} */
+  public FloodFillTask(BlockWriter writer, BlockPos start, BlockState to, int maxBlocks) {
+    this.writer = writer;
+    this.to = to;
+    this.maxBlocks = Math.min(maxBlocks, MAX_BLOCKS);
+    this.start = start;
+  }
+
+  public static void setMaxBlocks(MinecraftServer _server, GameRules.IntRule rule) {
+    MAX_BLOCKS = rule.get();
+  }
+
+  @Override
+  public int run(ServerWorld world, int budget) {
+    if (fromId < 0) {
+      BlockState state = world.getBlockState(start);
+      fromId = BlockIds.blockStateToBlockId(state);
+      if (state == to) {
+        return 1;
+      }
+      queue.enqueue(start.asLong());
+      visited.add(start.asLong());
+    }
+
+    int used = 0;
+    BlockPos.Mutable neighbor = new BlockPos.Mutable();
+    while (!isDone() && used < budget) {
+      BlockPos pos = BlockPos.fromLong(queue.dequeueLong());
+      writer.setBlockState(world, pos, to);
+      filled++;
+      used++;
+
+      for (Direction direction : Direction.values()) {
+        neighbor.set(pos, direction);
+        long key = neighbor.asLong();
+        if (visited.contains(key) || world.isOutOfHeightLimit(neighbor.getY())
+            || !world.getChunkManager().isChunkLoaded(ChunkSectionPos.getSectionCoord(neighbor.getX()),
+                ChunkSectionPos.getSectionCoord(neighbor.getZ()))) {
+          continue;
+        }
+        // only the blocks to fill are remembered, the others are simply read again
+        BlockState state = world.getBlockState(neighbor);
+        if (state != to && BlockIds.blockStateToBlockId(state) == fromId && visited.size() < maxBlocks) {
+          visited.add(key);
+          queue.enqueue(key);
+        }
+      }
+    }
+    return used;
+  }
+
+  @Override
+  public boolean isDone() {
+    return fromId >= 0 && (queue.isEmpty() || filled >= maxBlocks);
+  }
+
+}
@@ -0,0 +1,113 @@
+package mcpimod.tasks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+
+import mcpimod.utils.ChunkPreloader;
+import mcpimod.utils.RegionCodec;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.command.argument.BlockArgumentParser;
+import net.minecraft.registry.Registries;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * Receives a region in the {@link RegionCodec} format, one data line at a
+ * time. The blocks of each line are placed by running the import as a
+ * task, so they count against the block budget and wait for their chunks.
+ * Lines are checked completely before anything is placed.
+ */
+public class RegionImport implements BudgetedTask {
+
+  private final BlockWriter writer;
+
+  private final int minX, minY, minZ;
+  private final int sizeX, sizeY, sizeZ;
+  private final long total;
+
+  private final List<BlockState> palette = new ArrayList<>();
+  private final int[] indices = new int[RegionCodec.BLOCKS_PER_LINE];
+
+  private long cursor = 0;
+
+  // the blocks of the current line: decoded and placed so far
+  private int count = 0;
+  private int placed = 0;
+
+  public RegionImport(BlockWriter writer, BlockPos origin, int sizeX, int sizeY, int sizeZ) {
+    if (sizeX <= 0 || sizeY <= 0 || sizeZ <= 0) {
+      throw new IllegalArgumentException("Invalid region size: " + sizeX + "," + sizeY + "," + sizeZ);
+    }
+    this.writer = writer;
+    this.minX = origin.getX();
+    this.minY = origin.getY();
+    this.minZ = origin.getZ();
+    this.sizeX = sizeX;
+    this.sizeY = sizeY;
+    this.sizeZ = sizeZ;
+    this.total = (long) sizeX * sizeY * sizeZ;
+  }
+
+  /**
+   * Decodes the next data line, returns true if it completes the region.
+   * Throws an IllegalArgumentException for invalid lines, the import can't
+   * be continued then.
+   */
+  public boolean accept(String line) {
+    String[] entries = RegionCodec.decodePalette(line);
+    // every entry is a different block state used by the region
+    if (palette.size() + entries.length > Math.min(total, Block.STATE_IDS.size())) {
+      throw new IllegalArgumentException("More palette entries than blocks or block states");
+    }
+    List<BlockState> added = new ArrayList<>(entries.length);
+    for (String entry : entries) {
+      try {
+        added.add(BlockArgumentParser.block(Registries.BLOCK.getReadOnlyWrapper(), entry, false).blockState());
+      } catch (CommandSyntaxException e) {
+        throw new IllegalArgumentException("Invalid block state: " + entry, e);
+      }
+    }
+
+    int decoded = RegionCodec.decodeIndices(line, indices);
+    int paletteSize = palette.size() + added.size();
+    for (int i = 0; i < decoded; i++) {
+      if (indices[i] < 0 || indices[i] >= paletteSize) {
+        throw new IllegalArgumentException("Palette index " + indices[i] + " out of range, the palette has "
+            + paletteSize + " entries");
+      }
+    }
+
+    palette.addAll(added);
+    count = (int) Math.min(decoded, total - cursor);
+    placed = 0;
+    return cursor + count >= total;
+  }
+
+  @Override
+  public int run(ServerWorld world, int budget) {
+    int used = 0;
+    while (!isDone() && used < budget) {
+      int x = minX + (int) (cursor / ((long) sizeY * sizeZ));
+      int z = minZ + (int) (cursor / sizeY % sizeZ);
+      int y = minY + (int) (cursor % sizeY);
+      if (!ChunkPreloader.isLoaded(world, x >> 4, z >> 4)) {
+        break;
+      }
+      writer.setBlockState(world, new BlockPos(x, y, z), palette.get(indices[placed]));
+      placed++;
+      cursor++;
+      used++;
+    }
+    return used;
+  }
+
+  /** Whether the current line was placed */
+  @Override
+  public boolean isDone() {
+    return placed >= count;
+  }
+
+}
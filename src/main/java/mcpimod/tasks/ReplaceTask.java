@@ -0,0 +1,119 @@
+package mcpimod.tasks;
+
+import mcpimod.utils.BlockIds;
+import mcpimod.utils.ChunkPreloader;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+
+/**
+ * Replaces every block with a given api id inside a box. The box is walked
+ * section by section and sections which don't contain the id at all are
+ * skipped by only checking their palette. Unloaded chunks are not loaded
+ * on the server thread, the task waits for their tickets instead.
+ */
+public class ReplaceTask implements BudgetedTask {
+
+  /** Chunks requested at once, so they load in parallel */
+  private static final int PRELOAD_AHEAD = 16;
+
+  private final BlockWriter writer;
+  private final int fromId;
+  private final BlockState to;
+
+  private final int minX, minY, minZ, maxX, maxY, maxZ;
+
+  // the next section to process
+  private int sx, sy, sz;
+  private boolean done = false;
+
+  public ReplaceTask(BlockWriter writer, BlockPos pos1, BlockPos pos2, int fromId, BlockState to) {
+    this.writer = writer;
+    this.fromId = fromId;
+    this.to = to;
+    this.minX = Math.min(pos1.getX(), pos2.getX());
+    this.minY = Math.min(pos1.getY(), pos2.getY());
+    this.minZ = Math.min(pos1.getZ(), pos2.getZ());
+    this.maxX = Math.max(pos1.getX(), pos2.getX());
+    this.maxY = Math.max(pos1.getY(), pos2.getY());
+    this.maxZ = Math.max(pos1.getZ(), pos2.getZ());
+    this.sx = minX >> 4;
+    this.sy = minY >> 4;
+    this.sz = minZ >> 4;
+  }
+
+  @Override
+  public int run(ServerWorld world, int budget) {
+    int used = 0;
+    while (!done && used < budget) {
+      if (!ChunkPreloader.isLoaded(world, sx, sz)) {
+        requestAhead(world);
+        break;
+      }
+      used += 1 + replaceInSection(world);
+
+      // advance to the next section, y first
+      if (++sy > maxY >> 4) {
+        sy = minY >> 4;
+        if (++sz > maxZ >> 4) {
+          sz = minZ >> 4;
+          if (++sx > maxX >> 4) {
+            done = true;
+          }
+        }
+      }
+    }
+    return used;
+  }
+
+  /** Adds tickets for the next chunks in the order they are processed */
+  private void requestAhead(ServerWorld world) {
+    int x = sx, z = sz;
+    for (int i = 0; i < PRELOAD_AHEAD && x <= maxX >> 4; i++) {
+      ChunkPreloader.isLoaded(world, x, z);
+      if (++z > maxZ >> 4) {
+        z = minZ >> 4;
+        x++;
+      }
+    }
+  }
+
+  private int replaceInSection(ServerWorld world) {
+    int y0 = Math.max(sy << 4, Math.max(minY, world.getBottomY()));
+    int y1 = Math.min((sy << 4) + 15, Math.min(maxY, world.getTopY() - 1));
+    if (y0 > y1) {
+      return 0;
+    }
+
+    WorldChunk chunk = world.getChunk(sx, sz);
+    ChunkSection section = chunk.getSection(chunk.getSectionIndex(y0));
+    if (fromId != 0 && section.isEmpty()) {
+      return 0;
+    }
+    if (!section.hasAny(state -> BlockIds.blockStateToBlockId(state) == fromId)) {
+      return 0;
+    }
+
+    int x0 = Math.max(sx << 4, minX), x1 = Math.min((sx << 4) + 15, maxX);
+    int z0 = Math.max(sz << 4, minZ), z1 = Math.min((sz << 4) + 15, maxZ);
+    for (int x = x0; x <= x1; x++) {
+      for (int z = z0; z <= z1; z++) {
+        for (int y = y0; y <= y1; y++) {
+          BlockState state = section.getBlockState(x & 15, y & 15, z & 15);
+          if (state != to && BlockIds.blockStateToBlockId(state) == fromId) {
+            writer.setBlockState(world, new BlockPos(x, y, z), to);
+          }
+        }
+      }
+    }
+    return (x1 - x0 + 1) * (y1 - y0 + 1) * (z1 - z0 + 1);
+  }
+
+  @Override
+  public boolean isDone() {
+    return done;
+  }
+
+}
@@ -0,0 +1,87 @@
+package mcpimod.tasks;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import mcpimod.utils.ChunkPreloader;
+import mcpimod.utils.Shapes;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * Places the blocks of a shape. The positions of the shape are produced up
+ * to the budget and written as long as their chunks are loaded, the task
+ * waits for the tickets of unloaded chunks instead of loading them.
+ */
+public class ShapeTask implements BudgetedTask {
+
+  /** Chunks requested ahead of the first unloaded one */
+  private static final int PRELOAD_AHEAD = 16;
+
+  private final BlockWriter writer;
+  private final Shapes.Raster raster;
+  private final BlockState state;
+
+  // positions produced but not written yet
+  private final LongArrayList pending = new LongArrayList();
+  private int written = 0;
+
+  public ShapeTask(BlockWriter writer, Shapes.Raster raster, BlockState state) {
+    this.writer = writer;
+    this.raster = raster;
+    this.state = state;
+  }
+
+  @Override
+  public int run(ServerWorld world, int budget) {
+    int used = 0;
+    BlockPos.Mutable pos = new BlockPos.Mutable();
+    while (true) {
+      while (written < pending.size()) {
+        pos.set(pending.getLong(written));
+        if (!ChunkPreloader.isLoaded(world, pos.getX() >> 4, pos.getZ() >> 4)) {
+          requestAhead(world);
+          return used;
+        }
+        writer.setBlockState(world, pos.toImmutable(), state);
+        written++;
+      }
+      if (raster.isDone() || used >= budget) {
+        return used;
+      }
+
+      pending.clear();
+      written = 0;
+      used += raster.next((x, y, z) -> {
+        // the blocks outside of the world are dropped right away
+        if (!world.isOutOfHeightLimit(y)) {
+          pending.add(BlockPos.asLong(x, y, z));
+        }
+      }, budget - used);
+    }
+  }
+
+  /** Adds tickets for the next chunks of the pending positions, so they load in parallel */
+  private void requestAhead(ServerWorld world) {
+    long last = Long.MIN_VALUE;
+    int requested = 0;
+    for (int i = written; i < pending.size() && requested < PRELOAD_AHEAD; i++) {
+      long pos = pending.getLong(i);
+      int chunkX = BlockPos.unpackLongX(pos) >> 4;
+      int chunkZ = BlockPos.unpackLongZ(pos) >> 4;
+      long chunk = ChunkPos.toLong(chunkX, chunkZ);
+      if (chunk != last) {
+        last = chunk;
+        if (!ChunkPreloader.isLoaded(world, chunkX, chunkZ)) {
+          requested++;
+        }
+      }
+    }
+  }
+
+  @Override
+  public boolean isDone() {
+    return raster.isDone() && written >= pending.size();
+  }
+
+}
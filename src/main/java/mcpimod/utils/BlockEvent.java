@@ -16,16 +16,10 @@ public class BlockEvent {
     this.direction = direction;
   }
 
-  public String serialize() {
-    return serializeBlockPos(position) +
-        "," +
-        direction.getId() +
-        "," +
-        entity.getId();
-  }
-
-  private static String serializeBlockPos(BlockPos pos) {
-    return pos.getX() + "," + pos.getY() + "," + pos.getZ();
+  public void serialize(ResponseWriter out) {
+    out.append(position.getX()).append(',').append(position.getY()).append(',').append(position.getZ())
+        .append(',').append(direction.getId())
+        .append(',').append(entity.getId());
   }
 
 }
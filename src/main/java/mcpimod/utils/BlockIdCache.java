@@ -0,0 +1,146 @@
+package mcpimod.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.GameRules;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.WorldChunk;
+
+/**
+ * Caches chunk sections already converted to api block ids.
+ * Entries are dropped whenever a block in their section changes
+ * (see mcpimod.mixin.WorldChunkMixin) and the least recently used
+ * sections are evicted once the memory cap is reached.
+ *
+ * A block change only increases the stamp of its section, without a lock,
+ * and entries are checked against the stamp when they are read. Until a
+ * session used the cache block changes skip even that.
+ */
+public class BlockIdCache {
+
+  public static final int SECTION_BYTES = 16 * 16 * 16;
+
+  private static int maxEntries = 64 * 1024 * 1024 / SECTION_BYTES;
+
+  /** Sections share the stamps by hash, a collision only costs a cache miss */
+  private static final int STAMP_MASK = (1 << 16) - 1;
+  private static final AtomicLongArray STAMPS = new AtomicLongArray(STAMP_MASK + 1);
+
+  /** Set once a section was reserved, until then nothing has to be invalidated */
+  private static volatile boolean used = false;
+
+  private static final LinkedHashMap<SectionKey, Entry> CACHE = new LinkedHashMap<>(256, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<SectionKey, Entry> eldest) {
+      return size() > maxEntries;
+    }
+  };
+
+  public static void setMaxSizeMb(MinecraftServer _server, GameRules.IntRule rule) {
+    setMaxSizeMb(rule.get());
+  }
+
+  public static synchronized void setMaxSizeMb(int megabytes) {
+    maxEntries = (int) Math.min(Integer.MAX_VALUE, (long) megabytes * 1024 * 1024 / SECTION_BYTES);
+    if (CACHE.size() > maxEntries) {
+      CACHE.clear();
+    }
+  }
+
+  /** Returns a copy of the cached ids of a section, or null if it isn't cached (yet). */
+  public static synchronized byte[] get(World world, int sx, int sy, int sz) {
+    Entry entry = CACHE.get(new SectionKey(world.getRegistryKey(), ChunkSectionPos.asLong(sx, sy, sz)));
+    if (entry == null || entry.ids == null) {
+      return null;
+    }
+    if (!entry.isCurrent()) {
+      CACHE.remove(entry.key);
+      return null;
+    }
+    return entry.ids.clone();
+  }
+
+  /**
+   * Reserves a cache entry for a section which is about to be converted.
+   * The returned entry has to be passed to {@link #fill}, which only
+   * stores the ids if the section wasn't modified in the meantime.
+   */
+  public static synchronized Entry reserve(World world, int sx, int sy, int sz) {
+    if (maxEntries <= 0) {
+      return null;
+    }
+    used = true;
+    long section = ChunkSectionPos.asLong(sx, sy, sz);
+    SectionKey key = new SectionKey(world.getRegistryKey(), section);
+    int stampIndex = stampIndex(world.getRegistryKey(), section);
+    Entry entry = new Entry(key, stampIndex, STAMPS.get(stampIndex));
+    CACHE.put(key, entry);
+    return entry;
+  }
+
+  public static synchronized void fill(Entry entry, byte[] ids) {
+    if (entry != null && CACHE.get(entry.key) == entry && entry.isCurrent()) {
+      entry.ids = ids.clone();
+    }
+  }
+
+  /** Called for every block change on the server, so it takes no lock */
+  public static void invalidate(World world, BlockPos pos) {
+    if (!used) {
+      return;
+    }
+    STAMPS.incrementAndGet(stampIndex(world.getRegistryKey(),
+        ChunkSectionPos.asLong(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4)));
+  }
+
+  public static void invalidate(ServerWorld world, WorldChunk chunk) {
+    if (!used) {
+      return;
+    }
+    int cx = chunk.getPos().x;
+    int cz = chunk.getPos().z;
+    for (int sy = world.getBottomSectionCoord(); sy < world.getTopSectionCoord(); sy++) {
+      STAMPS.incrementAndGet(stampIndex(world.getRegistryKey(), ChunkSectionPos.asLong(cx, sy, cz)));
+    }
+  }
+
+  public static synchronized void clear() {
+    CACHE.clear();
+    used = false;
+  }
+
+  private static int stampIndex(RegistryKey<World> world, long section) {
+    return (int) HashCommon.mix(section ^ world.hashCode()) & STAMP_MASK;
+  }
+
+  private record SectionKey(RegistryKey<World> world, long section) {
+  }
+
+  public static class Entry {
+    private final SectionKey key;
+    private final int stampIndex;
+    /** The stamp of the section when it was copied */
+    private final long stamp;
+    private byte[] ids;
+
+    private Entry(SectionKey key, int stampIndex, long stamp) {
+      this.key = key;
+      this.stampIndex = stampIndex;
+      this.stamp = stamp;
+    }
+
+    /** False once a block of the section changed */
+    private boolean isCurrent() {
+      return STAMPS.get(stampIndex) == stamp;
+    }
+  }
+
+}
@@ -0,0 +1,655 @@
+package mcpimod.utils;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.ChestBlock;
+import net.minecraft.block.FurnaceBlock;
+import net.minecraft.block.LadderBlock;
+import net.minecraft.block.RedstoneOreBlock;
+import net.minecraft.block.SlabBlock;
+import net.minecraft.block.StairsBlock;
+import net.minecraft.block.WallTorchBlock;
+import net.minecraft.block.enums.BlockHalf;
+import net.minecraft.block.enums.SlabType;
+import net.minecraft.util.math.Direction;
+
+/** Mapping between the api block ids and the ingame block states */
+public class BlockIds {
+
+  // api id of every block state, indexed by the raw state id
+  private static volatile byte[] table;
+
+  // Maybe there are better ways at doing this.
+  // An array won't work since some ids between are missing
+  /**
+   * Turns blockIds from the api to actual ingame block states, see:
+   * https://pimylifeup.com/minecraft-pi-edition-api-reference/
+   */
+  public static BlockState blockIdToBlockState(int id, int subId) {
+    switch (id) {
+      case 0:
+        return Blocks.AIR.getDefaultState();
+      case 1:
+        return Blocks.STONE.getDefaultState();
+      case 2:
+        return Blocks.GRASS_BLOCK.getDefaultState();
+      case 3:
+        return Blocks.DIRT.getDefaultState();
+      case 4:
+        return Blocks.COBBLESTONE.getDefaultState();
+      case 5:
+        switch (subId) {
+          case 0:
+            return Blocks.OAK_PLANKS.getDefaultState();
+          case 1:
+            return Blocks.SPRUCE_PLANKS.getDefaultState();
+          case 2:
+            return Blocks.BIRCH_PLANKS.getDefaultState();
+          default:
+            return Blocks.OAK_PLANKS.getDefaultState();
+        }
+      case 6:
+        switch (subId) {
+          case 0:
+            return Blocks.OAK_SAPLING.getDefaultState();
+          case 1:
+            return Blocks.SPRUCE_SAPLING.getDefaultState();
+          case 2:
+            return Blocks.BIRCH_SAPLING.getDefaultState();
+          default:
+            return Blocks.OAK_SAPLING.getDefaultState();
+        }
+      case 7:
+        return Blocks.BEDROCK.getDefaultState();
+      case 8:
+        return Blocks.WATER.getDefaultState();
+      case 9:
+        return Blocks.WATER.getDefaultState(); // TODO: figure out how to make stationary
+      case 10:
+        return Blocks.LAVA.getDefaultState();
+      case 11:
+        return Blocks.LAVA.getDefaultState(); // TODO: figure out how to make stationary
+      case 12:
+        return Blocks.SAND.getDefaultState();
+      case 13:
+        return Blocks.GRAVEL.getDefaultState();
+      case 14:
+        return Blocks.GOLD_ORE.getDefaultState();
+      case 15:
+        return Blocks.IRON_ORE.getDefaultState();
+      case 16:
+        return Blocks.COAL_ORE.getDefaultState();
+      case 17:
+        return Blocks.OAK_WOOD.getDefaultState();
+      case 18:
+        switch (subId) {
+          case 1:
+            return Blocks.OAK_LEAVES.getDefaultState();
+          case 2:
+            return Blocks.SPRUCE_LEAVES.getDefaultState();
+          case 3:
+            return Blocks.BIRCH_LEAVES.getDefaultState();
+          default:
+            return Blocks.OAK_LEAVES.getDefaultState();
+        }
+      case 20:
+        return Blocks.GLASS.getDefaultState();
+      case 21:
+        return Blocks.LAPIS_ORE.getDefaultState();
+      case 22:
+        return Blocks.LAPIS_BLOCK.getDefaultState();
+      case 24:
+        switch (subId) {
+          case 0:
+            return Blocks.SANDSTONE.getDefaultState();
+          case 1:
+            return Blocks.CHISELED_SANDSTONE.getDefaultState();
+          case 2:
+            return Blocks.SMOOTH_SANDSTONE.getDefaultState();
+          default:
+            return Blocks.SANDSTONE.getDefaultState();
+        }
+      case 26:
+        return Blocks.RED_BED.getDefaultState();
+      case 30:
+        return Blocks.COBWEB.getDefaultState();
+      case 31:
+        switch (subId) {
+          case 0:
+            return Blocks.DEAD_BUSH.getDefaultState();
+          case 1:
+            return Blocks.TALL_GRASS.getDefaultState();
+          case 2:
+            return Blocks.FERN.getDefaultState();
+          default:
+            return Blocks.DEAD_BUSH.getDefaultState();
+        }
+      case 35:
+        switch (subId) {
+          case 0:
+            return Blocks.WHITE_WOOL.getDefaultState();
+          case 1:
+            return Blocks.ORANGE_WOOL.getDefaultState();
+          case 2:
+            return Blocks.MAGENTA_WOOL.getDefaultState();
+          case 3:
+            return Blocks.LIGHT_BLUE_WOOL.getDefaultState();
+          case 4:
+            return Blocks.YELLOW_WOOL.getDefaultState();
+          case 5:
+            return Blocks.LIME_WOOL.getDefaultState();
+          case 6:
+            return Blocks.PINK_WOOL.getDefaultState();
+          case 7:
+            return Blocks.GRAY_WOOL.getDefaultState();
+          case 8:
+            return Blocks.LIGHT_GRAY_WOOL.getDefaultState();
+          case 9:
+            return Blocks.CYAN_WOOL.getDefaultState();
+          case 10:
+            return Blocks.PURPLE_WOOL.getDefaultState();
+          case 11:
+            return Blocks.BLUE_WOOL.getDefaultState();
+          case 12:
+            return Blocks.BROWN_WOOL.getDefaultState();
+          case 13:
+            return Blocks.GREEN_WOOL.getDefaultState();
+          case 14:
+            return Blocks.RED_WOOL.getDefaultState();
+          case 15:
+            return Blocks.BLACK_WOOL.getDefaultState();
+          default:
+            return Blocks.WHITE_WOOL.getDefaultState();
+        }
+      case 37:
+        return Blocks.DANDELION.getDefaultState();
+      case 38:
+        return Blocks.CORNFLOWER.getDefaultState();
+      case 39:
+        return Blocks.BROWN_MUSHROOM.getDefaultState();
+      case 40:
+        return Blocks.RED_MUSHROOM.getDefaultState();
+      case 41:
+        return Blocks.GOLD_BLOCK.getDefaultState();
+      case 42:
+        return Blocks.IRON_BLOCK.getDefaultState();
+      case 43:
+        switch (subId) {
+          case 0:
+            return Blocks.STONE_SLAB.getDefaultState().with(SlabBlock.TYPE, SlabType.DOUBLE);
+          case 1:
+            return Blocks.SANDSTONE_SLAB.getDefaultState().with(SlabBlock.TYPE, SlabType.DOUBLE);
+          case 2:
+            return Blocks.OAK_SLAB.getDefaultState().with(SlabBlock.TYPE, SlabType.DOUBLE);
+          case 3:
+            return Blocks.COBBLESTONE_SLAB.getDefaultState().with(SlabBlock.TYPE, SlabType.DOUBLE);
+          case 4:
+            return Blocks.BRICK_SLAB.getDefaultState().with(SlabBlock.TYPE, SlabType.DOUBLE);
+          case 5:
+            return Blocks.STONE_BRICK_SLAB.getDefaultState().with(SlabBlock.TYPE, SlabType.DOUBLE);
+          default:
+            return Blocks.STONE_SLAB.getDefaultState().with(SlabBlock.TYPE, SlabType.DOUBLE);
+        }
+      case 44:
+        switch (subId) {
+          case 0:
+            return Blocks.STONE_SLAB.getDefaultState();
+          case 1:
+            return Blocks.SANDSTONE_SLAB.getDefaultState();
+          case 2:
+            return Blocks.OAK_SLAB.getDefaultState();
+          case 3:
+            return Blocks.COBBLESTONE_SLAB.getDefaultState();
+          case 4:
+            return Blocks.BRICK_SLAB.getDefaultState();
+          case 5:
+            return Blocks.STONE_BRICK_SLAB.getDefaultState();
+          default:
+            return Blocks.STONE_SLAB.getDefaultState();
+        }
+      case 45:
+        return Blocks.BRICK_WALL.getDefaultState();
+      case 46:
+        return Blocks.TNT.getDefaultState();
+      case 47:
+        return Blocks.BOOKSHELF.getDefaultState();
+      case 48:
+        return Blocks.MOSSY_COBBLESTONE.getDefaultState();
+      case 49:
+        return Blocks.OBSIDIAN.getDefaultState();
+      case 50:
+        switch (subId) {
+          case 1:
+            return Blocks.WALL_TORCH.getDefaultState().with(WallTorchBlock.FACING, Direction.EAST);
+          case 2:
+            return Blocks.WALL_TORCH.getDefaultState().with(WallTorchBlock.FACING, Direction.WEST);
+          case 3:
+            return Blocks.WALL_TORCH.getDefaultState().with(WallTorchBlock.FACING, Direction.SOUTH);
+          case 4:
+            return Blocks.WALL_TORCH.getDefaultState().with(WallTorchBlock.FACING, Direction.NORTH);
+          default:
+            return Blocks.TORCH.getDefaultState();
+        }
+      case 51:
+        return Blocks.FIRE.getDefaultState();
+      case 53:
+        switch (subId) {
+          case 0:
+            return Blocks.OAK_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.EAST);
+          case 1:
+            return Blocks.OAK_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.WEST);
+          case 2:
+            return Blocks.OAK_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.SOUTH);
+          case 3:
+            return Blocks.OAK_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.NORTH);
+          case 4:
+            return Blocks.OAK_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.EAST).with(StairsBlock.HALF,
+                BlockHalf.TOP);
+          case 5:
+            return Blocks.OAK_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.WEST).with(StairsBlock.HALF,
+                BlockHalf.TOP);
+          case 6:
+            return Blocks.OAK_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.SOUTH).with(StairsBlock.HALF,
+                BlockHalf.TOP);
+          case 7:
+            return Blocks.OAK_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.NORTH).with(StairsBlock.HALF,
+                BlockHalf.TOP);
+          default:
+            return Blocks.OAK_STAIRS.getDefaultState();
+        }
+      case 54:
+        switch (subId) {
+          case 1:
+            return Blocks.CHEST.getDefaultState().with(ChestBlock.FACING, Direction.EAST);
+          case 2:
+            return Blocks.CHEST.getDefaultState().with(ChestBlock.FACING, Direction.WEST);
+          case 3:
+            return Blocks.CHEST.getDefaultState().with(ChestBlock.FACING, Direction.SOUTH);
+          case 4:
+            return Blocks.CHEST.getDefaultState().with(ChestBlock.FACING, Direction.NORTH);
+          default:
+            return Blocks.CHEST.getDefaultState();
+        }
+      case 56:
+        return Blocks.DIAMOND_ORE.getDefaultState();
+      case 57:
+        return Blocks.DIAMOND_BLOCK.getDefaultState();
+      case 58:
+        return Blocks.CRAFTING_TABLE.getDefaultState();
+      case 59:
+        return Blocks.WHEAT.getDefaultState();
+      case 60:
+        return Blocks.FARMLAND.getDefaultState();
+      case 61:
+        return Blocks.FARMLAND.getDefaultState(); // TODO: make inactive
+      case 62:
+        switch (subId) {
+          case 1:
+            return Blocks.FURNACE.getDefaultState().with(FurnaceBlock.FACING, Direction.EAST).with(FurnaceBlock.LIT,
+                true);
+          case 2:
+            return Blocks.FURNACE.getDefaultState().with(FurnaceBlock.FACING, Direction.WEST).with(FurnaceBlock.LIT,
+                true);
+          case 3:
+            return Blocks.FURNACE.getDefaultState().with(FurnaceBlock.FACING, Direction.SOUTH).with(FurnaceBlock.LIT,
+                true);
+          case 4:
+            return Blocks.FURNACE.getDefaultState().with(FurnaceBlock.FACING, Direction.NORTH).with(FurnaceBlock.LIT,
+                true);
+          default:
+            return Blocks.FURNACE.getDefaultState().with(FurnaceBlock.LIT, true);
+        }
+      case 63:
+        return Blocks.OAK_SIGN.getDefaultState();
+      case 64:
+        return Blocks.OAK_DOOR.getDefaultState();
+      case 65:
+        switch (subId) {
+          case 1:
+            return Blocks.LADDER.getDefaultState().with(LadderBlock.FACING, Direction.EAST);
+          case 2:
+            return Blocks.LADDER.getDefaultState().with(LadderBlock.FACING, Direction.WEST);
+          case 3:
+            return Blocks.LADDER.getDefaultState().with(LadderBlock.FACING, Direction.SOUTH);
+          case 4:
+            return Blocks.LADDER.getDefaultState().with(LadderBlock.FACING, Direction.NORTH);
+          default:
+            return Blocks.LADDER.getDefaultState();
+        }
+      case 67:
+        switch (subId) {
+          case 0:
+            return Blocks.COBBLESTONE_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.EAST);
+          case 1:
+            return Blocks.COBBLESTONE_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.WEST);
+          case 2:
+            return Blocks.COBBLESTONE_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.SOUTH);
+          case 3:
+            return Blocks.COBBLESTONE_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.NORTH);
+          case 4:
+            return Blocks.COBBLESTONE_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.EAST).with(
+                StairsBlock.HALF,
+                BlockHalf.TOP);
+          case 5:
+            return Blocks.COBBLESTONE_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.WEST).with(
+                StairsBlock.HALF,
+                BlockHalf.TOP);
+          case 6:
+            return Blocks.COBBLESTONE_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.SOUTH).with(
+                StairsBlock.HALF,
+                BlockHalf.TOP);
+          case 7:
+            return Blocks.COBBLESTONE_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.NORTH).with(
+                StairsBlock.HALF,
+                BlockHalf.TOP);
+          default:
+            return Blocks.COBBLESTONE_STAIRS.getDefaultState();
+        }
+      case 71:
+        return Blocks.IRON_DOOR.getDefaultState();
+      case 73:
+        return Blocks.REDSTONE_ORE.getDefaultState();
+      case 74:
+        return Blocks.REDSTONE_ORE.getDefaultState().with(RedstoneOreBlock.LIT, true);
+      case 78:
+        return Blocks.SNOW.getDefaultState();
+      case 79:
+        return Blocks.ICE.getDefaultState();
+      case 80:
+        return Blocks.SNOW_BLOCK.getDefaultState();
+      case 81:
+        return Blocks.CACTUS.getDefaultState();
+      case 82:
+        return Blocks.CLAY.getDefaultState();
+      case 83:
+        return Blocks.SUGAR_CANE.getDefaultState();
+      case 85:
+        return Blocks.OAK_FENCE.getDefaultState();
+      case 87:
+        return Blocks.NETHERRACK.getDefaultState();
+      case 89:
+        return Blocks.GLOWSTONE.getDefaultState();
+      case 95:
+        return Blocks.BARRIER.getDefaultState();
+      case 96:
+        return Blocks.OAK_TRAPDOOR.getDefaultState();
+      case 98:
+        switch (subId) {
+          case 0:
+            return Blocks.STONE_BRICKS.getDefaultState();
+          case 1:
+            return Blocks.MOSSY_STONE_BRICKS.getDefaultState();
+          case 2:
+            return Blocks.CRACKED_STONE_BRICKS.getDefaultState();
+          case 3:
+            return Blocks.CHISELED_STONE_BRICKS.getDefaultState();
+          default:
+            return Blocks.STONE_BRICKS.getDefaultState();
+        }
+      case 102:
+        return Blocks.GLASS_PANE.getDefaultState();
+      case 103:
+        return Blocks.MELON.getDefaultState();
+      case 105:
+        return Blocks.MELON_STEM.getDefaultState();
+      case 107:
+        return Blocks.OAK_FENCE_GATE.getDefaultState(); // TODO: implement facing
+      case 108:
+        return Blocks.STONE_BRICK_STAIRS.getDefaultState();
+      case 112:
+        return Blocks.NETHER_BRICKS.getDefaultState();
+      case 114:
+        return Blocks.NETHER_BRICK_STAIRS.getDefaultState();
+      case 128:
+        return Blocks.SANDSTONE_STAIRS.getDefaultState();
+      case 155:
+        return Blocks.QUARTZ_BLOCK.getDefaultState();
+      case 156:
+        return Blocks.QUARTZ_STAIRS.getDefaultState();
+      case 245:
+        return Blocks.STONECUTTER.getDefaultState();
+      case 246:
+        return Blocks.CRYING_OBSIDIAN.getDefaultState();
+      case 247:
+        return Blocks.NETHER_PORTAL.getDefaultState(); // Java Editition doesn't have a nether reactor core
+      default:
+        return Blocks.AIR.getDefaultState();
+    }
+  }
+
+  /** Turns ingame block states to api block ids, using a table over all block states */
+  public static int blockStateToBlockId(BlockState state) {
+    byte[] ids = table;
+    int rawId = Block.getRawIdFromState(state);
+    if (rawId < 0) {
+      return computeBlockId(state);
+    }
+    if (ids == null || rawId >= ids.length) {
+      ids = buildTable();
+    }
+    return ids[rawId] & 0xFF;
+  }
+
+  private static synchronized byte[] buildTable() {
+    if (table == null || table.length < Block.STATE_IDS.size()) {
+      byte[] ids = new byte[Block.STATE_IDS.size()];
+      for (BlockState state : Block.STATE_IDS) {
+        ids[Block.getRawIdFromState(state)] = (byte) computeBlockId(state);
+      }
+      table = ids;
+    }
+    return table;
+  }
+
+  // Same as before. Is there a better way?
+  private static int computeBlockId(BlockState state) {
+    if (state.isOf(Blocks.AIR)) {
+      return 0;
+    } else if (state.isOf(Blocks.STONE)) {
+      return 1;
+    } else if (state.isOf(Blocks.GRASS_BLOCK)) {
+      return 2;
+    } else if (state.isOf(Blocks.DIRT)) {
+      return 3;
+    } else if (state.isOf(Blocks.COBBLESTONE)) {
+      return 4;
+    } else if (state.isOf(Blocks.OAK_PLANKS)) {
+      return 5;
+    } else if (state.isOf(Blocks.SPRUCE_PLANKS)) {
+      return 5;
+    } else if (state.isOf(Blocks.BIRCH_PLANKS)) {
+      return 5;
+    } else if (state.isOf(Blocks.OAK_SAPLING)) {
+      return 6;
+    } else if (state.isOf(Blocks.SPRUCE_SAPLING)) {
+      return 6;
+    } else if (state.isOf(Blocks.BIRCH_SAPLING)) {
+      return 6;
+    } else if (state.isOf(Blocks.BEDROCK)) {
+      return 7;
+    } else if (state.isOf(Blocks.WATER)) {
+      return 8;
+    } else if (state.isOf(Blocks.LAVA)) {
+      return 10;
+    } else if (state.isOf(Blocks.SAND)) {
+      return 12;
+    } else if (state.isOf(Blocks.GRAVEL)) {
+      return 13;
+    } else if (state.isOf(Blocks.GOLD_ORE)) {
+      return 14;
+    } else if (state.isOf(Blocks.IRON_ORE)) {
+      return 15;
+    } else if (state.isOf(Blocks.COAL_ORE)) {
+      return 16;
+    } else if (state.isOf(Blocks.OAK_WOOD)) {
+      return 17;
+    } else if (state.isOf(Blocks.OAK_LEAVES)) {
+      return 18;
+    } else if (state.isOf(Blocks.SPRUCE_LEAVES)) {
+      return 18;
+    } else if (state.isOf(Blocks.BIRCH_LEAVES)) {
+      return 18;
+    } else if (state.isOf(Blocks.GLASS)) {
+      return 20;
+    } else if (state.isOf(Blocks.LAPIS_ORE)) {
+      return 21;
+    } else if (state.isOf(Blocks.LAPIS_BLOCK)) {
+      return 22;
+    } else if (state.isOf(Blocks.SANDSTONE)) {
+      return 24;
+    } else if (state.isOf(Blocks.CHISELED_SANDSTONE)) {
+      return 24;
+    } else if (state.isOf(Blocks.SMOOTH_SANDSTONE)) {
+      return 24;
+    } else if (state.isOf(Blocks.RED_BED)) {
+      return 26;
+    } else if (state.isOf(Blocks.COBWEB)) {
+      return 30;
+    } else if (state.isOf(Blocks.DEAD_BUSH)) {
+      return 31;
+    } else if (state.isOf(Blocks.TALL_GRASS)) {
+      return 31;
+    } else if (state.isOf(Blocks.FERN)) {
+      return 31;
+    } else if (state.isOf(Blocks.WHITE_WOOL)) {
+      return 35;
+    } else if (state.isOf(Blocks.ORANGE_WOOL)) {
+      return 35;
+    } else if (state.isOf(Blocks.MAGENTA_WOOL)) {
+      return 35;
+    } else if (state.isOf(Blocks.LIGHT_BLUE_WOOL)) {
+      return 35;
+    } else if (state.isOf(Blocks.YELLOW_WOOL)) {
+      return 35;
+    } else if (state.isOf(Blocks.LIME_WOOL)) {
+      return 35;
+    } else if (state.isOf(Blocks.PINK_WOOL)) {
+      return 35;
+    } else if (state.isOf(Blocks.GRAY_WOOL)) {
+      return 35;
+    } else if (state.isOf(Blocks.LIGHT_GRAY_WOOL)) {
+      return 35;
+    } else if (state.isOf(Blocks.CYAN_WOOL)) {
+      return 35;
+    } else if (state.isOf(Blocks.PURPLE_WOOL)) {
+      return 35;
+    } else if (state.isOf(Blocks.BLUE_WOOL)) {
+      return 35;
+    } else if (state.isOf(Blocks.BROWN_WOOL)) {
+      return 35;
+    } else if (state.isOf(Blocks.GREEN_WOOL)) {
+      return 35;
+    } else if (state.isOf(Blocks.RED_WOOL)) {
+      return 35;
+    } else if (state.isOf(Blocks.BLACK_WOOL)) {
+      return 35;
+    } else if (state.isOf(Blocks.DANDELION)) {
+      return 37;
+    } else if (state.isOf(Blocks.CORNFLOWER)) {
+      return 38;
+    } else if (state.isOf(Blocks.BROWN_MUSHROOM)) {
+      return 39;
+    } else if (state.isOf(Blocks.RED_MUSHROOM)) {
+      return 40;
+    } else if (state.isOf(Blocks.GOLD_BLOCK)) {
+      return 41;
+    } else if (state.isOf(Blocks.IRON_BLOCK)) {
+      return 42;
+    } else if (state.isOf(Blocks.STONE_SLAB)) {
+      return 43;
+    } else if (state.isOf(Blocks.SANDSTONE_SLAB)) {
+      return 43;
+    } else if (state.isOf(Blocks.OAK_SLAB)) {
+      return 43;
+    } else if (state.isOf(Blocks.COBBLESTONE_SLAB)) {
+      return 43;
+    } else if (state.isOf(Blocks.BRICK_SLAB)) {
+      return 43;
+    } else if (state.isOf(Blocks.STONE_BRICK_SLAB)) {
+      return 43;
+    } else if (state.isOf(Blocks.BRICK_WALL)) {
+      return 45;
+    } else if (state.isOf(Blocks.TNT)) {
+      return 46;
+    } else if (state.isOf(Blocks.BOOKSHELF)) {
+      return 47;
+    } else if (state.isOf(Blocks.MOSSY_COBBLESTONE)) {
+      return 48;
+    } else if (state.isOf(Blocks.OBSIDIAN)) {
+      return 49;
+    } else if (state.isOf(Blocks.WALL_TORCH)) {
+      return 50;
+    } else if (state.isOf(Blocks.TORCH)) {
+      return 50;
+    } else if (state.isOf(Blocks.FIRE)) {
+      return 51;
+    } else if (state.isOf(Blocks.OAK_STAIRS)) {
+      return 53;
+    } else if (state.isOf(Blocks.CHEST)) {
+      return 54;
+    } else if (state.isOf(Blocks.DIAMOND_ORE)) {
+      return 56;
+    } else if (state.isOf(Blocks.DIAMOND_BLOCK)) {
+      return 57;
+    } else if (state.isOf(Blocks.CRAFTING_TABLE)) {
+      return 58;
+    } else if (state.isOf(Blocks.FARMLAND)) {
+      return 60;
+    } else if (state.isOf(Blocks.FURNACE)) {
+      return 62;
+    } else if (state.isOf(Blocks.OAK_DOOR)) {
+      return 64;
+    } else if (state.isOf(Blocks.LADDER)) {
+      return 65;
+    } else if (state.isOf(Blocks.COBBLESTONE_STAIRS)) {
+      return 67;
+    } else if (state.isOf(Blocks.IRON_DOOR)) {
+      return 71;
+    } else if (state.isOf(Blocks.REDSTONE_ORE)) {
+      return 73;
+    } else if (state.isOf(Blocks.SNOW)) {
+      return 78;
+    } else if (state.isOf(Blocks.ICE)) {
+      return 79;
+    } else if (state.isOf(Blocks.SNOW_BLOCK)) {
+      return 80;
+    } else if (state.isOf(Blocks.CACTUS)) {
+      return 81;
+    } else if (state.isOf(Blocks.CLAY)) {
+      return 82;
+    } else if (state.isOf(Blocks.SUGAR_CANE)) {
+      return 83;
+    } else if (state.isOf(Blocks.OAK_FENCE)) {
+      return 85;
+    } else if (state.isOf(Blocks.GLOWSTONE)) {
+      return 89;
+    } else if (state.isOf(Blocks.BARRIER)) {
+      return 95;
+    } else if (state.isOf(Blocks.STONE_BRICKS)) {
+      return 98;
+    } else if (state.isOf(Blocks.MOSSY_STONE_BRICKS)) {
+      return 98;
+    } else if (state.isOf(Blocks.CRACKED_STONE_BRICKS)) {
+      return 98;
+    } else if (state.isOf(Blocks.CHISELED_STONE_BRICKS)) {
+      return 98;
+    } else if (state.isOf(Blocks.GLASS_PANE)) {
+      return 102;
+    } else if (state.isOf(Blocks.MELON)) {
+      return 103;
+    } else if (state.isOf(Blocks.OAK_FENCE_GATE)) {
+      return 107;
+    } else if (state.isOf(Blocks.CRYING_OBSIDIAN)) {
+      return 246;
+    } else if (state.isOf(Blocks.NETHER_PORTAL)) {
+      return 247;
+    } else if (state.isOf(Blocks.CAVE_AIR)) {
+      return 0;
+    } else if (state.isOf(Blocks.VOID_AIR)) {
+      return 0;
+    }
+    return 1;
+  }
+
+}
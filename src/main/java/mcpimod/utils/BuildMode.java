@@ -0,0 +1,65 @@
+package mcpimod.utils;
+
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.block.Block;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.chunk.light.LightingProvider;
+
+/**
+ * Block writes in build mode skip neighbor and shape updates, skip
+ * onBlockAdded (which schedules the ticks of falling blocks and fluids, see
+ * WorldChunkMixin) and defer the light checks until the build is finished.
+ */
+public class BuildMode {
+
+  /** Only sync the change to the clients, no neighbor, shape or light updates */
+  public static final int FLAGS = Block.NOTIFY_LISTENERS | Block.FORCE_STATE;
+
+  /** Once more positions are waiting the light is updated right away to bound the memory */
+  public static final int MAX_DEFERRED = 1 << 20;
+
+  // collects the light checks of the write currently in progress, only accessed on the server thread
+  private static LongOpenHashSet deferred = null;
+
+  public static void begin(LongOpenHashSet positions) {
+    deferred = positions;
+  }
+
+  public static void end() {
+    deferred = null;
+  }
+
+  /** Whether a build mode write is in progress */
+  public static boolean isActive() {
+    return deferred != null;
+  }
+
+  /**
+   * Called instead of the light check of a block change.
+   * Returns false if no build mode write is in progress.
+   */
+  public static boolean deferLightCheck(BlockPos pos) {
+    if (deferred == null) {
+      return false;
+    }
+    deferred.add(pos.asLong());
+    return true;
+  }
+
+  /**
+   * Queues the deferred light checks. Every position is checked only once,
+   * no matter how often it was written, and the light engine works through
+   * the queued checks in its own batches.
+   */
+  public static void relight(ServerWorld world, LongOpenHashSet positions) {
+    LightingProvider lightingProvider = world.getChunkManager().getLightingProvider();
+    LongIterator it = positions.iterator();
+    while (it.hasNext()) {
+      lightingProvider.checkBlock(BlockPos.fromLong(it.nextLong()));
+    }
+    positions.clear();
+  }
+
+}
@@ -0,0 +1,155 @@
+package mcpimod.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.GameRules;
+import net.minecraft.world.World;
+
+/**
+ * Remembers the version at which each chunk section was last modified.
+ * The version is a global counter increased on every block change
+ * (see mcpimod.mixin.WorldChunkMixin). Changes are only tracked once a
+ * session asked for the version, before that no client can have one.
+ */
+public class ChangeTracker {
+
+  /**
+   * Once more sections are tracked the history is dropped. Clients asking
+   * for older versions then get every section of their region again.
+   */
+  private static final int MAX_TRACKED_SECTIONS = 1 << 20;
+
+  /** The most sections one world.getChangesSince returns, synced with the gamerule */
+  public static int MAX_SECTIONS = 4096;
+
+  private static final Map<RegistryKey<World>, Long2LongOpenHashMap> SECTIONS = new HashMap<>();
+
+  private static int trackedSections = 0;
+
+  private static long version = initialVersion();
+
+  /** Set by the first {@link #getVersion}, until then block changes skip the lock */
+  private static volatile boolean enabled = false;
+
+  /** The oldest version the history is complete for */
+  private static long oldestVersion = version;
+
+  /**
+   * Versions start from the current time, so versions a client got before a
+   * restart are always older than the new history and trigger a full resend.
+   */
+  private static long initialVersion() {
+    return System.currentTimeMillis() << 20;
+  }
+
+  public static void setMaxSections(MinecraftServer _server, GameRules.IntRule rule) {
+    MAX_SECTIONS = rule.get();
+  }
+
+  public static synchronized long getVersion() {
+    enabled = true;
+    return version;
+  }
+
+  /** Called for every block change on the server */
+  public static void markChanged(World world, BlockPos pos) {
+    if (enabled) {
+      track(world, pos);
+    }
+  }
+
+  private static synchronized void track(World world, BlockPos pos) {
+    if (trackedSections >= MAX_TRACKED_SECTIONS) {
+      SECTIONS.clear();
+      trackedSections = 0;
+      oldestVersion = version + 1;
+    }
+    version++;
+    Long2LongOpenHashMap sections = SECTIONS.computeIfAbsent(world.getRegistryKey(), k -> new Long2LongOpenHashMap());
+    long section = ChunkSectionPos.asLong(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4);
+    if (sections.put(section, version) == 0) {
+      trackedSections++;
+    }
+  }
+
+  /**
+   * Returns the sections (packed with ChunkSectionPos.asLong) inside the given
+   * section range which were changed after the given version. If the history
+   * doesn't reach back that far every section of the range is returned.
+   * Returns null if that would be more than {@link #MAX_SECTIONS} sections.
+   */
+  public static synchronized LongArrayList getChangesSince(World world, long since,
+      int minSx, int minSy, int minSz, int maxSx, int maxSy, int maxSz) {
+    LongArrayList changes = new LongArrayList();
+    long regionSize = (long) (maxSx - minSx + 1) * (maxSy - minSy + 1) * (maxSz - minSz + 1);
+
+    if (since < oldestVersion || since > version) {
+      // checked before the loop, a region around the whole world has billions of sections
+      if (regionSize > MAX_SECTIONS) {
+        return null;
+      }
+      for (int sx = minSx; sx <= maxSx; sx++) {
+        for (int sz = minSz; sz <= maxSz; sz++) {
+          for (int sy = minSy; sy <= maxSy; sy++) {
+            changes.add(ChunkSectionPos.asLong(sx, sy, sz));
+          }
+        }
+      }
+      return changes;
+    }
+
+    Long2LongOpenHashMap sections = SECTIONS.get(world.getRegistryKey());
+    if (sections == null) {
+      return changes;
+    }
+
+    if (regionSize < sections.size()) {
+      for (int sx = minSx; sx <= maxSx; sx++) {
+        for (int sz = minSz; sz <= maxSz; sz++) {
+          for (int sy = minSy; sy <= maxSy; sy++) {
+            long section = ChunkSectionPos.asLong(sx, sy, sz);
+            if (sections.get(section) > since && !add(changes, section)) {
+              return null;
+            }
+          }
+        }
+      }
+    } else {
+      for (Long2LongMap.Entry entry : sections.long2LongEntrySet()) {
+        long section = entry.getLongKey();
+        int sx = ChunkSectionPos.unpackX(section);
+        int sy = ChunkSectionPos.unpackY(section);
+        int sz = ChunkSectionPos.unpackZ(section);
+        if (entry.getLongValue() > since && sx >= minSx && sx <= maxSx && sy >= minSy && sy <= maxSy
+            && sz >= minSz && sz <= maxSz && !add(changes, section)) {
+          return null;
+        }
+      }
+    }
+
+    return changes;
+  }
+
+  /** Returns false once there are too many changes */
+  private static boolean add(LongArrayList changes, long section) {
+    changes.add(section);
+    return changes.size() <= MAX_SECTIONS;
+  }
+
+  public static synchronized void clear() {
+    enabled = false;
+    SECTIONS.clear();
+    trackedSections = 0;
+    version = initialVersion();
+    oldestVersion = version;
+  }
+
+}
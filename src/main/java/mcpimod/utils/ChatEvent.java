@@ -12,10 +12,8 @@ public class ChatEvent {
     this.message = message;
   }
 
-  public String serialize() {
-    return entity.getId() +
-        ", " +
-        message;
+  public void serialize(ResponseWriter out) {
+    out.append(entity.getId()).append(", ").append(message);
   }
 
 }
@@ -0,0 +1,90 @@
+package mcpimod.utils;
+
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ChunkTicketType;
+import net.minecraft.server.world.ServerChunkManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.GameRules;
+
+/**
+ * Loads the chunks targeted by remote commands asynchronously through
+ * chunk tickets, so the server thread never has to load or generate them.
+ */
+public class ChunkPreloader {
+
+  /** Regions with more chunks are not preloaded */
+  public static final int MAX_PRELOAD_CHUNKS = 1024;
+
+  /** Keeps the chunks loaded for a while, so following commands in the same area don't have to wait again */
+  public static final ChunkTicketType<ChunkPos> TICKET_TYPE = ChunkTicketType.create("mcpimod_preload",
+      Comparator.comparingLong(ChunkPos::toLong), 300);
+
+  public static int TIMEOUT_TICKS = 200;
+
+  public static final AtomicLong PARKED_COMMANDS = new AtomicLong();
+  public static final AtomicLong PARKED_TICKS = new AtomicLong();
+  public static final AtomicLong TIMEOUTS = new AtomicLong();
+
+  public static void setTimeoutTicks(MinecraftServer _server, GameRules.IntRule rule) {
+    TIMEOUT_TICKS = rule.get();
+  }
+
+  /**
+   * Returns true if all chunks (packed with ChunkPos.toLong) are loaded.
+   * Otherwise tickets are added for the missing ones.
+   */
+  public static boolean request(ServerWorld world, LongArrayList chunks) {
+    ServerChunkManager chunkManager = world.getChunkManager();
+    boolean loaded = true;
+    for (int i = 0; i < chunks.size(); i++) {
+      long chunk = chunks.getLong(i);
+      int x = ChunkPos.getPackedX(chunk);
+      int z = ChunkPos.getPackedZ(chunk);
+      if (!chunkManager.isChunkLoaded(x, z)) {
+        // adding the same ticket again only renews it
+        ChunkPos pos = new ChunkPos(x, z);
+        chunkManager.addTicket(TICKET_TYPE, pos, 0, pos);
+        loaded = false;
+      }
+    }
+    return loaded;
+  }
+
+  /** Returns true if all chunks in the range are loaded, without adding tickets */
+  public static boolean areLoaded(ServerWorld world, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+    ServerChunkManager chunkManager = world.getChunkManager();
+    for (int x = minChunkX; x <= maxChunkX; x++) {
+      for (int z = minChunkZ; z <= maxChunkZ; z++) {
+        if (!chunkManager.isChunkLoaded(x, z)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if the chunk is loaded, otherwise adds a ticket for it.
+   * Used by tasks, which wait for their chunks instead of loading them.
+   */
+  public static boolean isLoaded(ServerWorld world, int chunkX, int chunkZ) {
+    ServerChunkManager chunkManager = world.getChunkManager();
+    if (chunkManager.isChunkLoaded(chunkX, chunkZ)) {
+      return true;
+    }
+    ChunkPos pos = new ChunkPos(chunkX, chunkZ);
+    chunkManager.addTicket(TICKET_TYPE, pos, 0, pos);
+    return false;
+  }
+
+  public static String getStats() {
+    return "parked commands: " + PARKED_COMMANDS.get() + ", ticks parked: " + PARKED_TICKS.get()
+        + ", timeouts: " + TIMEOUTS.get();
+  }
+
+}
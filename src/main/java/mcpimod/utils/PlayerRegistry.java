@@ -0,0 +1,79 @@
+package mcpimod.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+/**
+ * Index of the online players by entity id, name and uuid, kept up to date
+ * by the join, respawn and disconnect events. Only used on the server thread.
+ */
+public class PlayerRegistry {
+
+  // in join order, the first one is the default player of the sessions
+  private static final List<ServerPlayerEntity> PLAYERS = new ArrayList<>();
+
+  private static final Int2ObjectOpenHashMap<ServerPlayerEntity> BY_ID = new Int2ObjectOpenHashMap<>();
+  private static final Map<String, ServerPlayerEntity> BY_NAME = new HashMap<>();
+  private static final Map<UUID, ServerPlayerEntity> BY_UUID = new HashMap<>();
+
+  public static void add(ServerPlayerEntity player) {
+    PLAYERS.add(player);
+    BY_ID.put(player.getId(), player);
+    BY_NAME.put(player.getGameProfile().getName().toLowerCase(Locale.ROOT), player);
+    BY_UUID.put(player.getUuid(), player);
+  }
+
+  public static void remove(ServerPlayerEntity player) {
+    PLAYERS.removeIf(p -> p.getUuid().equals(player.getUuid()));
+    BY_ID.remove(player.getId());
+    BY_NAME.remove(player.getGameProfile().getName().toLowerCase(Locale.ROOT));
+    BY_UUID.remove(player.getUuid());
+  }
+
+  /** Respawning creates a new player entity */
+  public static void replace(ServerPlayerEntity oldPlayer, ServerPlayerEntity newPlayer) {
+    int index = PLAYERS.indexOf(oldPlayer);
+    remove(oldPlayer);
+    add(newPlayer);
+    if (index >= 0) {
+      PLAYERS.remove(PLAYERS.size() - 1);
+      PLAYERS.add(index, newPlayer);
+    }
+  }
+
+  public static void clear() {
+    PLAYERS.clear();
+    BY_ID.clear();
+    BY_NAME.clear();
+    BY_UUID.clear();
+  }
+
+  /** Returns the player who joined first or null */
+  public static ServerPlayerEntity getFirst() {
+    return PLAYERS.isEmpty() ? null : PLAYERS.get(0);
+  }
+
+  public static List<ServerPlayerEntity> getPlayers() {
+    return PLAYERS;
+  }
+
+  public static ServerPlayerEntity getById(int id) {
+    return BY_ID.get(id);
+  }
+
+  public static ServerPlayerEntity getByName(String name) {
+    return BY_NAME.get(name.toLowerCase(Locale.ROOT));
+  }
+
+  public static ServerPlayerEntity getByUuid(UUID uuid) {
+    return BY_UUID.get(uuid);
+  }
+
+}
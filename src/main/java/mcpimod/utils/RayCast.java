@@ -0,0 +1,134 @@
+package mcpimod.utils;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+
+/**
+ * Walks along a ray block by block (Amanatides and Woo's voxel traversal)
+ * until it hits a block which isn't air. Only loaded chunks are visited.
+ */
+public class RayCast {
+
+  public static final double MAX_DISTANCE = 1024;
+
+  public static class Hit {
+    public final int x, y, z;
+    public final Direction face;
+    public final int blockId;
+
+    private Hit(int x, int y, int z, Direction face, int blockId) {
+      this.x = x;
+      this.y = y;
+      this.z = z;
+      this.face = face;
+      this.blockId = blockId;
+    }
+
+    public void serialize(ResponseWriter out) {
+      out.append(x).append(',').append(y).append(',').append(z).append(',').append(face.getId())
+          .append(',').append(blockId);
+    }
+  }
+
+  /** Returns the first block hit or null */
+  public static Hit cast(ServerWorld world, Vec3d origin, Vec3d direction, double maxDistance) {
+    Vec3d dir = direction.normalize();
+    if (dir.lengthSquared() == 0) {
+      return null;
+    }
+    maxDistance = Math.min(maxDistance, MAX_DISTANCE);
+
+    int x = (int) Math.floor(origin.x);
+    int y = (int) Math.floor(origin.y);
+    int z = (int) Math.floor(origin.z);
+
+    int stepX = dir.x > 0 ? 1 : -1;
+    int stepY = dir.y > 0 ? 1 : -1;
+    int stepZ = dir.z > 0 ? 1 : -1;
+
+    double deltaX = dir.x == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dir.x);
+    double deltaY = dir.y == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dir.y);
+    double deltaZ = dir.z == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dir.z);
+
+    // distance along the ray to the next block border on each axis
+    double maxX = dir.x == 0 ? Double.POSITIVE_INFINITY
+        : (stepX > 0 ? x + 1 - origin.x : origin.x - x) * deltaX;
+    double maxY = dir.y == 0 ? Double.POSITIVE_INFINITY
+        : (stepY > 0 ? y + 1 - origin.y : origin.y - y) * deltaY;
+    double maxZ = dir.z == 0 ? Double.POSITIVE_INFINITY
+        : (stepZ > 0 ? z + 1 - origin.z : origin.z - z) * deltaZ;
+
+    // a ray starting inside a block hits it on the side facing back along the ray
+    Direction face = Direction.getFacing(-dir.x, -dir.y, -dir.z);
+
+    SectionReader reader = new SectionReader(world);
+    while (true) {
+      BlockState state = reader.getBlockState(x, y, z);
+      if (state == null) {
+        return null;
+      }
+      if (!state.isAir()) {
+        return new Hit(x, y, z, face, BlockIds.blockStateToBlockId(state));
+      }
+
+      if (maxX < maxY && maxX < maxZ) {
+        if (maxX > maxDistance) {
+          return null;
+        }
+        x += stepX;
+        maxX += deltaX;
+        face = stepX > 0 ? Direction.WEST : Direction.EAST;
+      } else if (maxY < maxZ) {
+        if (maxY > maxDistance) {
+          return null;
+        }
+        y += stepY;
+        maxY += deltaY;
+        face = stepY > 0 ? Direction.DOWN : Direction.UP;
+      } else {
+        if (maxZ > maxDistance) {
+          return null;
+        }
+        z += stepZ;
+        maxZ += deltaZ;
+        face = stepZ > 0 ? Direction.NORTH : Direction.SOUTH;
+      }
+    }
+  }
+
+  /** Keeps the current section, since a ray stays in one for many steps */
+  private static class SectionReader {
+    private final ServerWorld world;
+
+    private long sectionPos = Long.MAX_VALUE;
+    private ChunkSection section;
+
+    private SectionReader(ServerWorld world) {
+      this.world = world;
+    }
+
+    /** Returns null for unloaded chunks */
+    private BlockState getBlockState(int x, int y, int z) {
+      if (world.isOutOfHeightLimit(y)) {
+        return Blocks.VOID_AIR.getDefaultState();
+      }
+      long pos = ChunkSectionPos.asLong(x >> 4, y >> 4, z >> 4);
+      if (pos != sectionPos) {
+        WorldChunk chunk = world.getChunkManager().getWorldChunk(x >> 4, z >> 4);
+        if (chunk == null) {
+          return null;
+        }
+        section = chunk.getSection(chunk.getSectionIndex(y));
+        sectionPos = pos;
+      }
+      return section.getBlockState(x & 15, y & 15, z & 15);
+    }
+  }
+
+}
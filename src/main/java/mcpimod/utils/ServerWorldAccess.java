@@ -0,0 +1,80 @@
+package mcpimod.utils;
+
+import java.util.function.Consumer;
+
+import mcpimod.core.BlockSnapshot;
+import mcpimod.core.SliceSnapshot;
+import mcpimod.core.WorldAccess;
+import mcpimod.tasks.BlockWriter;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.TntBlock;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * Adapts a ServerWorld for the protocol core. Blocks are written through
+ * the write path of the session, so they respect its build mode. Streamed
+ * snapshots are handed to the session, which captures their slices every
+ * tick until they are complete and holds back its writes until then.
+ */
+public class ServerWorldAccess implements WorldAccess {
+
+  private final ServerWorld world;
+  private final BlockWriter writer;
+  private final Consumer<SliceSnapshot> streams;
+
+  public ServerWorldAccess(ServerWorld world, BlockWriter writer, Consumer<SliceSnapshot> streams) {
+    this.world = world;
+    this.writer = writer;
+    this.streams = streams;
+  }
+
+  public ServerWorld getWorld() {
+    return world;
+  }
+
+  @Override
+  public BlockSnapshot snapshot(int x1, int y1, int z1, int x2, int y2, int z2) {
+    return WorldSnapshot.capture(world, new BlockPos(x1, y1, z1), new BlockPos(x2, y2, z2));
+  }
+
+  @Override
+  public BlockSnapshot streamSnapshot(int x1, int y1, int z1, int x2, int y2, int z2) {
+    int minX = Math.min(x1, x2), maxX = Math.max(x1, x2);
+    int minZ = Math.min(z1, z2), maxZ = Math.max(z1, z2);
+    SliceSnapshot snapshot = new SliceSnapshot(sx -> {
+      // a slice waits for its chunks instead of loading them on the server thread
+      boolean loaded = true;
+      for (int sz = minZ >> 4; sz <= maxZ >> 4; sz++) {
+        loaded &= ChunkPreloader.isLoaded(world, sx, sz);
+      }
+      if (!loaded) {
+        return null;
+      }
+      return WorldSnapshot.capture(world, new BlockPos(Math.max(sx << 4, minX), y1, minZ),
+          new BlockPos(Math.min((sx << 4) + 15, maxX), y2, maxZ));
+    }, x1, x2);
+
+    // the first slices are captured right away, small boxes are complete then
+    if (!snapshot.capture()) {
+      streams.accept(snapshot);
+    }
+    return snapshot;
+  }
+
+  @Override
+  public void setBlock(int x, int y, int z, int blockId, int blockData) {
+    BlockPos pos = new BlockPos(x, y, z);
+    BlockState state = BlockIds.blockIdToBlockState(blockId, blockData);
+
+    writer.setBlockState(world, pos, state);
+
+    // primed tnt like in Minecraft Pi
+    if (state.isOf(Blocks.TNT) && blockData > 0) {
+      TntBlock.primeTnt(world, pos);
+      world.removeBlock(pos, false);
+    }
+  }
+
+}
@@ -0,0 +1,365 @@
+package mcpimod.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rasterizes shapes into block positions on the server, so clients don't
+ * have to send one world.setBlock per block. The positions are produced a
+ * part at a time (a column, a line step or a triangle row), so large shapes
+ * can be placed over several ticks.
+ */
+public class Shapes {
+
+  public interface BlockConsumer {
+    void accept(int x, int y, int z);
+  }
+
+  /** The positions of a shape, produced a part at a time */
+  public interface Raster {
+
+    /**
+     * Passes the positions of the next parts to the consumer until about
+     * budget positions were visited and returns the positions visited
+     */
+    int next(BlockConsumer consumer, int budget);
+
+    boolean isDone();
+
+  }
+
+  /**
+   * A sphere around the given center. Hollow spheres only contain the
+   * blocks with at least one neighbor outside of the sphere.
+   */
+  public static Raster sphere(int cx, int cy, int cz, int radius, boolean hollow) {
+    return new SphereRaster(cx, cy, cz, radius, hollow);
+  }
+
+  /**
+   * An upright cylinder starting at the given position. Hollow cylinders
+   * only contain the outer wall.
+   */
+  public static Raster cylinder(int cx, int cy, int cz, int radius, int height, boolean hollow) {
+    return new CylinderRaster(cx, cy, cz, radius, height, hollow);
+  }
+
+  /** A 3D Bresenham line including both end points */
+  public static Raster line(int x1, int y1, int z1, int x2, int y2, int z2) {
+    return new LineRaster(x1, y1, z1, x2, y2, z2);
+  }
+
+  /**
+   * A closed polygon through the given vertices (x, y, z triples).
+   * Filled polygons are split into a triangle fan around the first vertex.
+   */
+  public static Raster polygon(int[] vertices, boolean hollow) {
+    List<Raster> parts = new ArrayList<>();
+    int count = vertices.length / 3;
+    for (int i = 0; i < count; i++) {
+      int j = (i + 1) % count;
+      parts.add(line(vertices[i * 3], vertices[i * 3 + 1], vertices[i * 3 + 2],
+          vertices[j * 3], vertices[j * 3 + 1], vertices[j * 3 + 2]));
+    }
+    if (!hollow) {
+      for (int i = 1; i + 1 < count; i++) {
+        parts.add(new TriangleRaster(vertices[0], vertices[1], vertices[2],
+            vertices[i * 3], vertices[i * 3 + 1], vertices[i * 3 + 2],
+            vertices[i * 3 + 3], vertices[i * 3 + 4], vertices[i * 3 + 5]));
+      }
+    }
+    return new SequenceRaster(parts);
+  }
+
+  /** Visits the sphere one column (dx, dz) at a time */
+  private static class SphereRaster implements Raster {
+    private final int cx, cy, cz, radius;
+    private final boolean hollow;
+    private final long r2;
+
+    private int dx, dz;
+
+    private SphereRaster(int cx, int cy, int cz, int radius, boolean hollow) {
+      this.cx = cx;
+      this.cy = cy;
+      this.cz = cz;
+      this.radius = radius;
+      this.hollow = hollow;
+      this.r2 = (long) radius * radius;
+      this.dx = -radius;
+      this.dz = -radius;
+    }
+
+    @Override
+    public int next(BlockConsumer consumer, int budget) {
+      int used = 0;
+      while (!isDone() && used < budget) {
+        for (int dy = -radius; dy <= radius; dy++) {
+          if (!inSphere(dx, dy, dz, r2)) {
+            continue;
+          }
+          if (hollow && inSphere(dx + 1, dy, dz, r2) && inSphere(dx - 1, dy, dz, r2)
+              && inSphere(dx, dy + 1, dz, r2) && inSphere(dx, dy - 1, dz, r2)
+              && inSphere(dx, dy, dz + 1, r2) && inSphere(dx, dy, dz - 1, r2)) {
+            continue;
+          }
+          consumer.accept(cx + dx, cy + dy, cz + dz);
+        }
+        used += 2 * radius + 1;
+
+        if (++dz > radius) {
+          dz = -radius;
+          dx++;
+        }
+      }
+      return used;
+    }
+
+    @Override
+    public boolean isDone() {
+      return dx > radius;
+    }
+  }
+
+  private static boolean inSphere(int dx, int dy, int dz, long r2) {
+    return (long) dx * dx + (long) dy * dy + (long) dz * dz <= r2;
+  }
+
+  /** Visits the cylinder one column (dx, dz) at a time */
+  private static class CylinderRaster implements Raster {
+    private final int cx, cy, cz, radius, height;
+    private final boolean hollow;
+    private final long r2;
+
+    private int dx, dz;
+
+    private CylinderRaster(int cx, int cy, int cz, int radius, int height, boolean hollow) {
+      this.cx = cx;
+      this.cy = cy;
+      this.cz = cz;
+      this.radius = radius;
+      this.height = height;
+      this.hollow = hollow;
+      this.r2 = (long) radius * radius;
+      this.dx = -radius;
+      this.dz = -radius;
+    }
+
+    @Override
+    public int next(BlockConsumer consumer, int budget) {
+      int used = 0;
+      while (!isDone() && used < budget) {
+        if (inCircle(dx, dz, r2) && !(hollow && inCircle(dx + 1, dz, r2) && inCircle(dx - 1, dz, r2)
+            && inCircle(dx, dz + 1, r2) && inCircle(dx, dz - 1, r2))) {
+          for (int dy = 0; dy < height; dy++) {
+            consumer.accept(cx + dx, cy + dy, cz + dz);
+          }
+        }
+        used += Math.max(height, 1);
+
+        if (++dz > radius) {
+          dz = -radius;
+          dx++;
+        }
+      }
+      return used;
+    }
+
+    @Override
+    public boolean isDone() {
+      return dx > radius;
+    }
+  }
+
+  private static boolean inCircle(int dx, int dz, long r2) {
+    return (long) dx * dx + (long) dz * dz <= r2;
+  }
+
+  /**
+   * Bresenham along the axis with the largest distance, the errors of the
+   * other two axes decide when they take a step
+   */
+  private static class LineRaster implements Raster {
+    private final int[] pos;
+    private final int[] delta;
+    private final int[] step;
+    private final int[] error = new int[3];
+    private final int axis;
+
+    // -1 until the first point was visited
+    private int i = -1;
+
+    private LineRaster(int x1, int y1, int z1, int x2, int y2, int z2) {
+      pos = new int[] { x1, y1, z1 };
+      delta = new int[] { Math.abs(x2 - x1), Math.abs(y2 - y1), Math.abs(z2 - z1) };
+      step = new int[] { x2 > x1 ? 1 : -1, y2 > y1 ? 1 : -1, z2 > z1 ? 1 : -1 };
+      if (delta[0] >= delta[1] && delta[0] >= delta[2]) {
+        axis = 0;
+      } else if (delta[1] >= delta[2]) {
+        axis = 1;
+      } else {
+        axis = 2;
+      }
+      for (int a = 0; a < 3; a++) {
+        error[a] = 2 * delta[a] - delta[axis];
+      }
+    }
+
+    @Override
+    public int next(BlockConsumer consumer, int budget) {
+      int used = 0;
+      while (!isDone() && used < budget) {
+        if (i >= 0) {
+          pos[axis] += step[axis];
+          for (int a = 0; a < 3; a++) {
+            if (a == axis) {
+              continue;
+            }
+            if (error[a] >= 0) {
+              pos[a] += step[a];
+              error[a] -= 2 * delta[axis];
+            }
+            error[a] += 2 * delta[a];
+          }
+        }
+        i++;
+        consumer.accept(pos[0], pos[1], pos[2]);
+        used++;
+      }
+      return used;
+    }
+
+    @Override
+    public boolean isDone() {
+      return i >= delta[axis];
+    }
+  }
+
+  /**
+   * Fills a triangle by scanning its projection onto the plane it is most
+   * parallel to, which leaves no gaps. The edges are drawn separately.
+   * Visits one row (u) of the projection at a time.
+   */
+  private static class TriangleRaster implements Raster {
+    // 0 = project along x, 1 = along y, 2 = along z
+    private int axis;
+    private int[] a, b, c;
+    private long[] n;
+    private int minV, maxV, maxU;
+
+    private int u;
+    private boolean degenerated = false;
+
+    private TriangleRaster(int ax, int ay, int az, int bx, int by, int bz, int cx, int cy, int cz) {
+      long ux = bx - ax, uy = by - ay, uz = bz - az;
+      long vx = cx - ax, vy = cy - ay, vz = cz - az;
+      long nx = uy * vz - uz * vy;
+      long ny = uz * vx - ux * vz;
+      long nz = ux * vy - uy * vx;
+
+      // degenerated triangles are just their edges
+      if (nx == 0 && ny == 0 && nz == 0) {
+        degenerated = true;
+        return;
+      }
+
+      if (Math.abs(nx) >= Math.abs(ny) && Math.abs(nx) >= Math.abs(nz)) {
+        axis = 0;
+      } else if (Math.abs(ny) >= Math.abs(nz)) {
+        axis = 1;
+      } else {
+        axis = 2;
+      }
+
+      a = project(ax, ay, az, axis);
+      b = project(bx, by, bz, axis);
+      c = project(cx, cy, cz, axis);
+      n = project(nx, ny, nz, axis);
+
+      u = Math.min(a[0], Math.min(b[0], c[0]));
+      maxU = Math.max(a[0], Math.max(b[0], c[0]));
+      minV = Math.min(a[1], Math.min(b[1], c[1]));
+      maxV = Math.max(a[1], Math.max(b[1], c[1]));
+    }
+
+    @Override
+    public int next(BlockConsumer consumer, int budget) {
+      int used = 0;
+      while (!isDone() && used < budget) {
+        for (int v = minV; v <= maxV; v++) {
+          long e0 = edge(a, b, u, v);
+          long e1 = edge(b, c, u, v);
+          long e2 = edge(c, a, u, v);
+          if ((e0 < 0 || e1 < 0 || e2 < 0) && (e0 > 0 || e1 > 0 || e2 > 0)) {
+            continue;
+          }
+          // solve the plane equation for the projected axis
+          int w = (int) Math.round(a[2] - (double) (n[0] * (u - a[0]) + n[1] * (v - a[1])) / n[2]);
+          switch (axis) {
+            case 0 -> consumer.accept(w, u, v);
+            case 1 -> consumer.accept(u, w, v);
+            default -> consumer.accept(u, v, w);
+          }
+        }
+        used += maxV - minV + 1;
+        u++;
+      }
+      return used;
+    }
+
+    @Override
+    public boolean isDone() {
+      return degenerated || u > maxU;
+    }
+  }
+
+  /** The parts one after another */
+  private static class SequenceRaster implements Raster {
+    private final List<Raster> parts;
+    private int index = 0;
+
+    private SequenceRaster(List<Raster> parts) {
+      this.parts = parts;
+    }
+
+    @Override
+    public int next(BlockConsumer consumer, int budget) {
+      int used = 0;
+      while (!isDone() && used < budget) {
+        Raster part = parts.get(index);
+        used += part.next(consumer, budget - used);
+        if (part.isDone()) {
+          index++;
+        }
+      }
+      return used;
+    }
+
+    @Override
+    public boolean isDone() {
+      return index >= parts.size();
+    }
+  }
+
+  private static long edge(int[] p, int[] q, int u, int v) {
+    return (long) (q[0] - p[0]) * (v - p[1]) - (long) (q[1] - p[1]) * (u - p[0]);
+  }
+
+  /** Returns {u, v, w} where w is the coordinate along the axis */
+  private static int[] project(int x, int y, int z, int axis) {
+    return switch (axis) {
+      case 0 -> new int[] { y, z, x };
+      case 1 -> new int[] { x, z, y };
+      default -> new int[] { x, y, z };
+    };
+  }
+
+  private static long[] project(long x, long y, long z, int axis) {
+    return switch (axis) {
+      case 0 -> new long[] { y, z, x };
+      case 1 -> new long[] { x, z, y };
+      default -> new long[] { x, y, z };
+    };
+  }
+
+}
@@ -0,0 +1,204 @@
+package mcpimod.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import mcpimod.McpiMod;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.GameRules;
+
+/**
+ * Appends every line a session receives to a file, with the server tick and
+ * the time (System.nanoTime) it arrived, so the traffic can be replayed
+ * later, see {@link TrafficRecording}. Used by the input thread of the
+ * session, the lines are collected in a buffer and written in blocks and
+ * at least once per second, so a crash loses at most the last second.
+ *
+ * Either every session is recorded (mcpiRecordSessions) or only the ones
+ * from the addresses picked with /mcpi record. A recording stops once it
+ * reaches mcpiRecordingMaxMb.
+ *
+ * File format: the magic "MCPIREC1", the start time (epoch millis, 8 bytes),
+ * the address of the session (varint length + UTF-8), then one entry per
+ * line: varint tick delta, varint nanos delta, varint length, UTF-8 line.
+ */
+public class TrafficRecorder {
+
+  public static final String EXTENSION = ".mcpirec";
+
+  public static final Path DIRECTORY = Path.of("mcpi-recordings");
+
+  public static boolean ENABLED = false;
+
+  /** Recordings stop at this size, 0 means no limit */
+  public static int MAX_SIZE_MB = 64;
+
+  /** The host addresses recorded with /mcpi record */
+  public static final Set<String> TARGETS = ConcurrentHashMap.newKeySet();
+
+  /** Updated by the server thread at the start of every tick */
+  public static volatile long currentTick = 0;
+
+  private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+  /** The open recordings, flushed once per second */
+  private static final Set<TrafficRecorder> OPEN = ConcurrentHashMap.newKeySet();
+
+  private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "mcpimod-recording-flush");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  static {
+    FLUSHER.scheduleWithFixedDelay(TrafficRecorder::flushAll, 1, 1, TimeUnit.SECONDS);
+  }
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+  private long lastTick = -1;
+  private long lastNanos = -1;
+
+  /** Bytes written and buffered */
+  private long size = 0;
+  private boolean closed = false;
+
+  public static void setEnabled(MinecraftServer _server, GameRules.BooleanRule rule) {
+    ENABLED = rule.get();
+  }
+
+  public static void setMaxSizeMb(MinecraftServer _server, GameRules.IntRule rule) {
+    MAX_SIZE_MB = rule.get();
+  }
+
+  /** Whether a new session from the host address gets recorded */
+  public static boolean shouldRecord(String hostAddress) {
+    return ENABLED || TARGETS.contains(hostAddress);
+  }
+
+  private TrafficRecorder(FileChannel channel) {
+    this.channel = channel;
+  }
+
+  /** Starts a new recording in DIRECTORY */
+  public static TrafficRecorder create(String address) throws IOException {
+    Files.createDirectories(DIRECTORY);
+    String name = LocalDateTime.now().format(FILE_TIME) + "-" + address.replaceAll("[^0-9A-Za-z.]+", "_");
+    Path file = DIRECTORY.resolve(name + EXTENSION);
+    for (int i = 1; Files.exists(file); i++) {
+      file = DIRECTORY.resolve(name + "-" + i + EXTENSION);
+    }
+
+    TrafficRecorder recorder = new TrafficRecorder(FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+    byte[] addressBytes = address.getBytes(StandardCharsets.UTF_8);
+    recorder.buffer.put(TrafficRecording.MAGIC);
+    recorder.buffer.putLong(System.currentTimeMillis());
+    recorder.putVarLong(addressBytes.length);
+    recorder.buffer.put(addressBytes);
+    recorder.size = recorder.buffer.position();
+    OPEN.add(recorder);
+    return recorder;
+  }
+
+  /** Appends a line, returns false once the recording is full or closed */
+  public synchronized boolean record(long tick, long nanos, String line) throws IOException {
+    if (closed) {
+      return false;
+    }
+    byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+    // 3 varints take at most 30 bytes
+    if (MAX_SIZE_MB > 0 && size + bytes.length + 30 > MAX_SIZE_MB * 1024L * 1024L) {
+      return false;
+    }
+    if (buffer.remaining() < bytes.length + 30) {
+      flush();
+    }
+    int start = buffer.position();
+
+    putVarLong(lastTick < 0 ? tick : tick - lastTick);
+    putVarLong(lastNanos < 0 ? 0 : nanos - lastNanos);
+    putVarLong(bytes.length);
+    lastTick = tick;
+    lastNanos = nanos;
+
+    size += buffer.position() - start + bytes.length;
+
+    if (bytes.length > buffer.remaining()) {
+      flush();
+      write(ByteBuffer.wrap(bytes));
+    } else {
+      buffer.put(bytes);
+    }
+    return true;
+  }
+
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    OPEN.remove(this);
+    try {
+      flush();
+    } finally {
+      channel.close();
+    }
+  }
+
+  public synchronized long getSize() {
+    return size;
+  }
+
+  private static void flushAll() {
+    for (TrafficRecorder recorder : OPEN) {
+      synchronized (recorder) {
+        try {
+          if (!recorder.closed) {
+            recorder.flush();
+          }
+        } catch (IOException e) {
+          McpiMod.LOGGER.warn("*ERROR* Failed to write a recording, recording stopped");
+          e.printStackTrace();
+          // the session drops it once it records the next line
+          recorder.closed = true;
+          OPEN.remove(recorder);
+          try {
+            recorder.channel.close();
+          } catch (IOException ignored) {
+          }
+        }
+      }
+    }
+  }
+
+  private void flush() throws IOException {
+    buffer.flip();
+    write(buffer);
+    buffer.clear();
+  }
+
+  private void write(ByteBuffer data) throws IOException {
+    while (data.hasRemaining()) {
+      channel.write(data);
+    }
+  }
+
+  private void putVarLong(long value) {
+    TrafficRecording.putVarLong(buffer, value);
+  }
+
+}
@@ -0,0 +1,154 @@
+package mcpimod.utils;
+
+import java.util.Arrays;
+
+import mcpimod.core.BlockSnapshot;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.PalettedContainer;
+import net.minecraft.world.chunk.WorldChunk;
+
+/**
+ * An immutable copy of the chunk sections covering a box of the world.
+ * It has to be captured on the server thread, but can be read from any
+ * thread afterwards since it only holds private copies of the sections.
+ *
+ * Sections found in the {@link BlockIdCache} are copied as api ids right
+ * away, the others are copied as palettes and converted on first access.
+ */
+public class WorldSnapshot implements BlockSnapshot {
+
+  private final int minSectionX, minSectionY, minSectionZ;
+  private final int sizeX, sizeY, sizeZ;
+
+  private final int bottomY, topY;
+
+  // a null entry in both arrays is an empty (all air) section
+  private final byte[][] ids;
+  private final PalettedContainer<BlockState>[] palettes;
+  private final BlockIdCache.Entry[] cacheEntries;
+
+  @SuppressWarnings("unchecked")
+  private WorldSnapshot(int minSectionX, int minSectionY, int minSectionZ, int sizeX, int sizeY, int sizeZ,
+      int bottomY, int topY) {
+    this.minSectionX = minSectionX;
+    this.minSectionY = minSectionY;
+    this.minSectionZ = minSectionZ;
+    this.sizeX = sizeX;
+    this.sizeY = sizeY;
+    this.sizeZ = sizeZ;
+    this.bottomY = bottomY;
+    this.topY = topY;
+    this.ids = new byte[sizeX * sizeY * sizeZ][];
+    this.palettes = new PalettedContainer[sizeX * sizeY * sizeZ];
+    this.cacheEntries = new BlockIdCache.Entry[sizeX * sizeY * sizeZ];
+  }
+
+  /**
+   * Copies every section touched by the box spanned by pos1 and pos2.
+   * Must be called on the server thread.
+   */
+  public static WorldSnapshot capture(ServerWorld world, BlockPos pos1, BlockPos pos2) {
+    int minX, maxX, minY, maxY, minZ, maxZ;
+    minX = Math.min(pos1.getX(), pos2.getX()) >> 4;
+    maxX = Math.max(pos1.getX(), pos2.getX()) >> 4;
+    minY = Math.min(pos1.getY(), pos2.getY()) >> 4;
+    maxY = Math.max(pos1.getY(), pos2.getY()) >> 4;
+    minZ = Math.min(pos1.getZ(), pos2.getZ()) >> 4;
+    maxZ = Math.max(pos1.getZ(), pos2.getZ()) >> 4;
+
+    WorldSnapshot snapshot = new WorldSnapshot(minX, minY, minZ, maxX - minX + 1, maxY - minY + 1, maxZ - minZ + 1,
+        world.getBottomY(), world.getTopY());
+
+    for (int sx = minX; sx <= maxX; sx++) {
+      for (int sz = minZ; sz <= maxZ; sz++) {
+        WorldChunk chunk = null;
+        for (int sy = minY; sy <= maxY; sy++) {
+          int y = sy << 4;
+          if (y < snapshot.bottomY || y >= snapshot.topY) {
+            continue;
+          }
+          int index = snapshot.index(sx, sy, sz);
+
+          byte[] cached = BlockIdCache.get(world, sx, sy, sz);
+          if (cached != null) {
+            snapshot.ids[index] = cached;
+            continue;
+          }
+
+          if (chunk == null) {
+            chunk = world.getChunk(sx, sz);
+          }
+          ChunkSection section = chunk.getSection(chunk.getSectionIndex(y));
+          if (!section.isEmpty()) {
+            snapshot.palettes[index] = section.getBlockStateContainer().copy();
+            snapshot.cacheEntries[index] = BlockIdCache.reserve(world, sx, sy, sz);
+          }
+        }
+      }
+    }
+
+    return snapshot;
+  }
+
+  @Override
+  public int getBlockId(int x, int y, int z) {
+    if (y < bottomY || y >= topY) {
+      return 0;
+    }
+    byte[] section = getSection(index(x >> 4, y >> 4, z >> 4));
+    if (section == null) {
+      return 0;
+    }
+    return section[((y & 15) << 8) | ((z & 15) << 4) | (x & 15)] & 0xFF;
+  }
+
+  private byte[] getSection(int index) {
+    byte[] section = ids[index];
+    if (section == null && palettes[index] != null) {
+      PalettedContainer<BlockState> palette = palettes[index];
+      section = new byte[BlockIdCache.SECTION_BYTES];
+      for (int y = 0; y < 16; y++) {
+        for (int z = 0; z < 16; z++) {
+          for (int x = 0; x < 16; x++) {
+            section[(y << 8) | (z << 4) | x] = (byte) BlockIds.blockStateToBlockId(palette.get(x, y, z));
+          }
+        }
+      }
+      ids[index] = section;
+      palettes[index] = null;
+      BlockIdCache.fill(cacheEntries[index], section);
+    }
+    return section;
+  }
+
+  /**
+   * Drops the sections of one x slice to free their memory, blocks read
+   * from them afterwards are air
+   */
+  @Override
+  public void release(int sx) {
+    int dx = sx - minSectionX;
+    if (dx < 0 || dx >= sizeX) {
+      return;
+    }
+    int from = dx * sizeZ * sizeY;
+    int to = from + sizeZ * sizeY;
+    Arrays.fill(ids, from, to, null);
+    Arrays.fill(palettes, from, to, null);
+    Arrays.fill(cacheEntries, from, to, null);
+  }
+
+  private int index(int sx, int sy, int sz) {
+    int dx = sx - minSectionX;
+    int dy = sy - minSectionY;
+    int dz = sz - minSectionZ;
+    if (dx < 0 || dy < 0 || dz < 0 || dx >= sizeX || dy >= sizeY || dz >= sizeZ) {
+      throw new IndexOutOfBoundsException("Position outside of the snapshot");
+    }
+    return (dx * sizeZ + dz) * sizeY + dy;
+  }
+
+}